@@ -0,0 +1,237 @@
+package com.choliy.igor.sunshine.debug;
+
+import android.app.IntentService;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.choliy.igor.sunshine.ForecastSnapshot;
+import com.choliy.igor.sunshine.core.ForecastBatch;
+import com.choliy.igor.sunshine.data.WeatherContract;
+import com.choliy.igor.sunshine.fakeserver.FakeWeatherServer;
+import com.choliy.igor.sunshine.network.CircuitBreaker;
+import com.choliy.igor.sunshine.network.HttpDiskCache;
+import com.choliy.igor.sunshine.network.HttpValidators;
+import com.choliy.igor.sunshine.sync.SyncScheduler;
+import com.choliy.igor.sunshine.sync.SyncTask;
+import com.choliy.igor.sunshine.util.Metrics;
+import com.choliy.igor.sunshine.util.NetworkUtils;
+import com.choliy.igor.sunshine.util.PreferencesUtils;
+import com.choliy.igor.sunshine.util.SyncUtils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Load tests the sync without a network. It starts a {@link FakeWeatherServer} in the app's
+ * process, points the forecast URL at it, runs {@link SyncTask#syncWeather} over and over and
+ * reports the p50 and p99 sync time, the bytes downloaded and the rows written. Only debug builds
+ * have it, started from the shell:
+ * <pre>
+ *     adb shell am startservice -n com.choliy.igor.sunshine/.debug.SyncLoadService \
+ *         --ei iterations 200 --ei days 14 --ei min_latency_ms 20 --ei max_latency_ms 200 \
+ *         --ef error_rate 0.05 --ef change_rate 0.3
+ * </pre>
+ * The report goes to the log under this class' name, and to {@link #REPORT_FILE_NAME} in the
+ * app's files directory. The syncs write to the real database, for the location in the settings,
+ * so its forecast and last sync time are saved before the run and put back after it, together
+ * with the {@link ForecastSnapshot}. The validators of the fake server's URL are forgotten
+ * afterwards, and the sync schedule is left alone throughout.
+ */
+public class SyncLoadService extends IntentService {
+
+    private static final String TAG = SyncLoadService.class.getSimpleName();
+
+    public static final String REPORT_FILE_NAME = "sync_load.txt";
+
+    public static final String EXTRA_ITERATIONS = "iterations";
+    public static final String EXTRA_DAYS = "days";
+    public static final String EXTRA_MIN_LATENCY_MS = "min_latency_ms";
+    public static final String EXTRA_MAX_LATENCY_MS = "max_latency_ms";
+    public static final String EXTRA_ERROR_RATE = "error_rate";
+    public static final String EXTRA_CHANGE_RATE = "change_rate";
+
+    private static final int DEFAULT_ITERATIONS = 100;
+
+    public SyncLoadService() {
+        super(SyncLoadService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        int iterations = intent.getIntExtra(EXTRA_ITERATIONS, DEFAULT_ITERATIONS);
+
+        FakeWeatherServer server = new FakeWeatherServer();
+        server.setDays(intent.getIntExtra(EXTRA_DAYS, -1));
+        server.setLatency(intent.getIntExtra(EXTRA_MIN_LATENCY_MS, 0),
+                intent.getIntExtra(EXTRA_MAX_LATENCY_MS, 0));
+        server.setErrorRate(intent.getFloatExtra(EXTRA_ERROR_RATE, 0f), 503);
+        server.setChangeRate(intent.getFloatExtra(EXTRA_CHANGE_RATE, 0f));
+
+        HttpDiskCache cache = HttpDiskCache.getInstance(this);
+        String baseUrl = NetworkUtils.getForecastBaseUrl();
+        CircuitBreaker circuitBreaker = null;
+        URL fakeUrl = null;
+
+        /* The fake forecasts land where the real one is, so it's put back once we're done */
+        String locationSetting = PreferencesUtils.getPreferredWeatherLocation(this);
+        ForecastBatch savedForecast = queryStoredForecast(locationSetting);
+        long savedLastSync = SyncUtils.getLastSyncTime(this, locationSetting);
+        try {
+            server.start();
+            NetworkUtils.setForecastBaseUrl(server.getBaseUrl());
+            fakeUrl = NetworkUtils.getUrl(this);
+
+            /* Every sync has to reach the server, not the disk cache or an open breaker */
+            cache.setFreshnessTtl(0);
+            circuitBreaker = CircuitBreaker.forEndpoint(new URL(server.getBaseUrl()).getHost());
+            circuitBreaker.setCoolDown(0);
+
+            /* The fake forecasts mustn't teach the scheduler anything about the real one */
+            SyncScheduler.setEnabled(false);
+
+            String report = run(server, iterations);
+            Log.i(TAG, report);
+            writeReport(report);
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't start the fake weather server: " + e.getMessage());
+        } finally {
+            SyncScheduler.setEnabled(true);
+            if (circuitBreaker != null) {
+                circuitBreaker.setCoolDown(CircuitBreaker.DEFAULT_COOL_DOWN_MILLIS);
+            }
+            NetworkUtils.setForecastBaseUrl(baseUrl);
+            cache.setFreshnessTtl(HttpDiskCache.DEFAULT_FRESHNESS_TTL_MILLIS);
+            server.close();
+
+            if (fakeUrl != null) HttpValidators.clear(this, fakeUrl);
+            restoreForecast(locationSetting, savedForecast, savedLastSync);
+        }
+    }
+
+    /**
+     * @return Every day stored for the location, in the order of their dates
+     */
+    private ForecastBatch queryStoredForecast(String locationSetting) {
+        ForecastBatch forecast = new ForecastBatch();
+        Cursor cursor = getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithLocation(locationSetting),
+                new String[]{
+                        WeatherContract.WeatherEntry.COLUMN_DATE,
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                        WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                        WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                        WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                        WeatherContract.WeatherEntry.COLUMN_DEGREES},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) return forecast;
+
+        try {
+            while (cursor.moveToNext()) {
+                forecast.add(cursor.getLong(0), cursor.getInt(1), cursor.getDouble(2),
+                        cursor.getDouble(3), cursor.getDouble(4), cursor.getDouble(5),
+                        cursor.getDouble(6), cursor.getDouble(7));
+            }
+        } finally {
+            cursor.close();
+        }
+        return forecast;
+    }
+
+    /**
+     * Puts back the forecast and last sync time the location had before the run. Without that,
+     * the next real sync would send the fake forecast's validators, get a 304 and keep the fake
+     * forecast, which also looks freshly synced.
+     */
+    private void restoreForecast(String locationSetting, ForecastBatch forecast, long lastSync) {
+        WeatherContract.WeatherEntry.replaceForecast(getContentResolver(), locationSetting,
+                forecast);
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_SYNC, lastSync);
+        getContentResolver().update(
+                WeatherContract.LocationEntry.buildLocationUri(locationSetting),
+                locationValues,
+                null,
+                null);
+
+        /* The snapshot was taken of the fake forecast, take it again of the real one */
+        ForecastSnapshot.save(this, locationSetting);
+    }
+
+    private String run(FakeWeatherServer server, int iterations) {
+        Metrics.Counter bytesReceived = Metrics.counter("sync.bytes_received");
+        Metrics.Counter rowsChanged = Metrics.counter("sync.rows_changed");
+        long bytesBefore = bytesReceived.get();
+        long rowsBefore = rowsChanged.get();
+
+        long[] syncMicros = new long[iterations];
+        Map<SyncTask.Result, Integer> results = new EnumMap<>(SyncTask.Result.class);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long syncStart = System.nanoTime();
+            SyncTask.Result result = SyncTask.syncWeather(this, new CancellationSignal());
+            syncMicros[i] = (System.nanoTime() - syncStart) / 1000;
+
+            Integer count = results.get(result);
+            results.put(result, count == null ? 1 : count + 1);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Arrays.sort(syncMicros);
+
+        StringWriter report = new StringWriter();
+        PrintWriter writer = new PrintWriter(report);
+        writer.println(String.format(Locale.US, "%d syncs in %d ms", iterations, elapsedMillis));
+        writer.println(String.format(Locale.US, "sync time: p50=%d us p99=%d us max=%d us",
+                percentile(syncMicros, 50), percentile(syncMicros, 99),
+                iterations > 0 ? syncMicros[iterations - 1] : 0));
+        writer.println("results: " + results);
+        writer.println("bytes received: " + (bytesReceived.get() - bytesBefore));
+        writer.println("rows written: " + (rowsChanged.get() - rowsBefore));
+        writer.println("server: " + server.getRequestCount() + " requests over "
+                + server.getConnectionCount() + " connections, "
+                + server.getNotModifiedCount() + " not modified, "
+                + server.getErrorCount() + " errors, "
+                + server.getBytesSent() + " bytes sent");
+        writer.flush();
+        return report.toString();
+    }
+
+    /**
+     * @param sorted     The values, in ascending order
+     * @param percentile Between 0 and 100
+     * @return The value the given share of the values are at or below, 0 if there are none
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(sorted.length * percentile / 100);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private void writeReport(String report) {
+        File file = new File(getFilesDir(), REPORT_FILE_NAME);
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new FileWriter(file));
+            writer.print(report);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write " + file + ": " + e.getMessage());
+        } finally {
+            if (writer != null) writer.close();
+        }
+    }
+}
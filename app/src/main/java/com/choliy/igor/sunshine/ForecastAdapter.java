@@ -1,8 +1,8 @@
 package com.choliy.igor.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,9 +10,10 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.choliy.igor.sunshine.data.WeatherContract;
-import com.choliy.igor.sunshine.util.DateTimeUtils;
-import com.choliy.igor.sunshine.util.WeatherUtils;
+import com.choliy.igor.sunshine.util.TraceUtils;
+
+import java.util.Collections;
+import java.util.List;
 
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastViewHolder> {
 
@@ -20,7 +21,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
     private final AdapterOnClickHandler mClickHandler;
     private final Context mContext;
-    private Cursor mCursor;
+    private List<ForecastItem> mItems = Collections.emptyList();
 
     /*
      * Flag to determine if we want to use a separate view for the list item that represents
@@ -34,93 +35,73 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = clickHandler;
         mUseTodayLayout = mContext.getResources().getBoolean(R.bool.use_today_layout);
+        setHasStableIds(true);
     }
 
     @Override
     public ForecastViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
-        int layoutId;
-        switch (viewType) {
-            case VIEW_TYPE_TODAY:
-                layoutId = R.layout.forecast_list_item_today;
-                break;
-            case VIEW_TYPE_FUTURE_DAY:
-                layoutId = R.layout.forecast_list_item;
-                break;
-            default:
-                throw new IllegalArgumentException("Invalid view type, value of " + viewType);
+        TraceUtils.beginSection("ForecastAdapter.onCreateViewHolder");
+        try {
+            int layoutId;
+            switch (viewType) {
+                case VIEW_TYPE_TODAY:
+                    layoutId = R.layout.forecast_list_item_today;
+                    break;
+                case VIEW_TYPE_FUTURE_DAY:
+                    layoutId = R.layout.forecast_list_item;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid view type, value of " + viewType);
+            }
+
+            View view = LayoutInflater.from(mContext).inflate(layoutId, viewGroup, false);
+            view.setFocusable(true);
+
+            return new ForecastViewHolder(view);
+        } finally {
+            TraceUtils.endSection();
         }
-
-        View view = LayoutInflater.from(mContext).inflate(layoutId, viewGroup, false);
-        view.setFocusable(true);
-
-        return new ForecastViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(ForecastViewHolder viewHolder, int position) {
-        mCursor.moveToPosition(position);
+        TraceUtils.beginSection("ForecastAdapter.onBindViewHolder");
+        try {
+            bindForecastItem(viewHolder, position);
+        } finally {
+            TraceUtils.endSection();
+        }
+    }
+
+    private void bindForecastItem(ForecastViewHolder viewHolder, int position) {
+        ForecastItem item = mItems.get(position);
 
         /****************
          * Weather Icon *
          ****************/
-        int weatherIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
-        int weatherId = mCursor.getInt(weatherIndex);
-
-        int weatherImageId;
         int viewType = getItemViewType(position);
-
         switch (viewType) {
             case VIEW_TYPE_TODAY:
-                weatherImageId = WeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+                viewHolder.iconView.setImageResource(item.getLargeIconResId());
                 break;
             case VIEW_TYPE_FUTURE_DAY:
-                weatherImageId = WeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+                viewHolder.iconView.setImageResource(item.getSmallIconResId());
                 break;
             default:
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
-        viewHolder.iconView.setImageResource(weatherImageId);
 
-        /****************
-         * Weather Date *
-         ****************/
-        int dateIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-        long dateInMillis = mCursor.getLong(dateIndex);
-        String dateString = DateTimeUtils.getFriendlyDateString(mContext, dateInMillis, false);
-        viewHolder.dateView.setText(dateString);
-
-        /***********************
-         * Weather Description *
-         ***********************/
-        String description = WeatherUtils.getStringForWeatherCondition(mContext, weatherId);
-        String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
-
-        viewHolder.descriptionView.setText(description);
-        viewHolder.descriptionView.setContentDescription(descriptionA11y);
-
-        /**************************
-         * High (max) temperature *
-         **************************/
-        int maxTempIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
-        double highInCelsius = mCursor.getDouble(maxTempIndex);
-
-        String highString = WeatherUtils.formatTemperature(mContext, highInCelsius);
-        String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
-
-        viewHolder.highTempView.setText(highString);
-        viewHolder.highTempView.setContentDescription(highA11y);
-
-        /*************************
-         * Low (min) temperature *
-         *************************/
-        int minTempIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
-        double lowInCelsius = mCursor.getDouble(minTempIndex);
-
-        String lowString = WeatherUtils.formatTemperature(mContext, lowInCelsius);
-        String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
-
-        viewHolder.lowTempView.setText(lowString);
-        viewHolder.lowTempView.setContentDescription(lowA11y);
+        /* Everything else was formatted by the loader, off the main thread */
+        viewHolder.dateView.setText(item.getDateText());
+
+        viewHolder.descriptionView.setText(item.getDescription());
+        viewHolder.descriptionView.setContentDescription(item.getDescriptionA11y());
+
+        viewHolder.highTempView.setText(item.getHighText());
+        viewHolder.highTempView.setContentDescription(item.getHighA11y());
+
+        viewHolder.lowTempView.setText(item.getLowText());
+        viewHolder.lowTempView.setContentDescription(item.getLowA11y());
     }
 
     /**
@@ -131,8 +112,19 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        return mItems.size();
+    }
+
+    /**
+     * The date of a day identifies it across loads, so RecyclerView keeps the views of days that
+     * are still in the list.
+     *
+     * @param position index within our RecyclerView
+     * @return the normalized UTC date of the day at that position
+     */
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).getDate();
     }
 
     /**
@@ -142,7 +134,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
      * different layout for the "today" layout. The "today" layout is only shown in portrait mode
      * with the first item in the list.
      *
-     * @param position index within our RecyclerView and Cursor
+     * @param position index within our RecyclerView and forecast list
      * @return the view type (today or future day)
      */
     @Override
@@ -154,9 +146,42 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         }
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    /**
+     * Shows a newly loaded forecast. Only the days that were added, removed or look different
+     * than before are rebound, so a sync that changed a single day redraws a single row.
+     *
+     * @param items The forecast, as loaded by {@link ForecastListLoader}, or null to show nothing
+     */
+    public void swapForecast(List<ForecastItem> items) {
+        final List<ForecastItem> oldItems = mItems;
+        final List<ForecastItem> newItems =
+                items != null ? items : Collections.<ForecastItem>emptyList();
+
+        /* The list holds about two weeks, comparing them is cheap enough for the main thread */
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldItems.get(oldPosition).getDate() == newItems.get(newPosition).getDate();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldItems.get(oldPosition).equals(newItems.get(newPosition));
+            }
+        }, false);
+
+        mItems = newItems;
+        diff.dispatchUpdatesTo(this);
     }
 
     class ForecastViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -178,18 +203,17 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         }
 
         /**
-         * This gets called by the child views during a click. We fetch the date that has been
-         * selected, and then call the onClick handler registered with this adapter, passing that
+         * This gets called by the child views during a click. We take the date of the day that
+         * has been selected, and then call the onClick handler registered with this adapter, passing that
          * date.
          *
          * @param view the View that was clicked
          */
         @Override
         public void onClick(View view) {
-            mCursor.moveToPosition(getAdapterPosition());
-            int dateIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            long dateInMillis = mCursor.getLong(dateIndex);
-            mClickHandler.onForecastItemClick(dateInMillis);
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return;
+            mClickHandler.onForecastItemClick(mItems.get(position).getDate());
         }
     }
 
@@ -0,0 +1,183 @@
+package com.choliy.igor.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.choliy.igor.sunshine.data.WeatherContract;
+import com.choliy.igor.sunshine.util.DateTimeUtils;
+import com.choliy.igor.sunshine.util.WeatherUtils;
+
+/**
+ * One day of the forecast list, with everything it shows already formatted. Items are built off
+ * the main thread by {@link ForecastListLoader}, so binding one to a view only sets its texts.
+ * Items are immutable; two items are equal when they look the same on screen.
+ */
+public final class ForecastItem {
+
+    private final long mDate;
+    private final int mSmallIconResId;
+    private final int mLargeIconResId;
+    private final String mDateText;
+    private final String mDescription;
+    private final String mDescriptionA11y;
+    private final String mHighText;
+    private final String mHighA11y;
+    private final String mLowText;
+    private final String mLowA11y;
+
+    private ForecastItem(long date, int smallIconResId, int largeIconResId, String dateText,
+                         String description, String descriptionA11y, String highText,
+                         String highA11y, String lowText, String lowA11y) {
+        mDate = date;
+        mSmallIconResId = smallIconResId;
+        mLargeIconResId = largeIconResId;
+        mDateText = dateText;
+        mDescription = description;
+        mDescriptionA11y = descriptionA11y;
+        mHighText = highText;
+        mHighA11y = highA11y;
+        mLowText = lowText;
+        mLowA11y = lowA11y;
+    }
+
+    /**
+     * Formats the day the cursor is on.
+     *
+     * @param context Used to access resources and the unit preference
+     * @param cursor  A cursor over the columns of the forecast list projection, moved to the day
+     * @param columns The indices of these columns in the cursor
+     * @return The formatted day
+     */
+    static ForecastItem fromCursor(Context context, Cursor cursor, Columns columns) {
+        return create(context,
+                cursor.getLong(columns.date),
+                cursor.getInt(columns.weatherId),
+                cursor.getDouble(columns.maxTemp),
+                cursor.getDouble(columns.minTemp));
+    }
+
+    /**
+     * Formats a day from its stored values.
+     *
+     * @param context       Used to access resources and the unit preference
+     * @param date          The normalized UTC date of the day
+     * @param weatherId     The OpenWeatherMap weather condition ID
+     * @param highInCelsius The high temperature of the day
+     * @param lowInCelsius  The low temperature of the day
+     * @return The formatted day
+     */
+    static ForecastItem create(Context context, long date, int weatherId, double highInCelsius,
+                               double lowInCelsius) {
+        String description = WeatherUtils.getStringForWeatherCondition(context, weatherId);
+        String highText = WeatherUtils.formatTemperature(context, highInCelsius);
+        String lowText = WeatherUtils.formatTemperature(context, lowInCelsius);
+
+        return new ForecastItem(date,
+                WeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId),
+                WeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId),
+                DateTimeUtils.getFriendlyDateString(context, date, false),
+                description,
+                context.getString(R.string.a11y_forecast, description),
+                highText,
+                context.getString(R.string.a11y_high_temp, highText),
+                lowText,
+                context.getString(R.string.a11y_low_temp, lowText));
+    }
+
+    /**
+     * @return The normalized UTC date of the day, which also identifies it within the list
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    /**
+     * @return The icon for the "future day" list item
+     */
+    public int getSmallIconResId() {
+        return mSmallIconResId;
+    }
+
+    /**
+     * @return The art for the "today" list item
+     */
+    public int getLargeIconResId() {
+        return mLargeIconResId;
+    }
+
+    public String getDateText() {
+        return mDateText;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getDescriptionA11y() {
+        return mDescriptionA11y;
+    }
+
+    public String getHighText() {
+        return mHighText;
+    }
+
+    public String getHighA11y() {
+        return mHighA11y;
+    }
+
+    public String getLowText() {
+        return mLowText;
+    }
+
+    public String getLowA11y() {
+        return mLowA11y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ForecastItem)) return false;
+
+        ForecastItem other = (ForecastItem) o;
+        return mDate == other.mDate
+                && mSmallIconResId == other.mSmallIconResId
+                && mLargeIconResId == other.mLargeIconResId
+                && mDateText.equals(other.mDateText)
+                && mDescription.equals(other.mDescription)
+                && mDescriptionA11y.equals(other.mDescriptionA11y)
+                && mHighText.equals(other.mHighText)
+                && mHighA11y.equals(other.mHighA11y)
+                && mLowText.equals(other.mLowText)
+                && mLowA11y.equals(other.mLowA11y);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mDate ^ (mDate >>> 32));
+        result = 31 * result + mSmallIconResId;
+        result = 31 * result + mDateText.hashCode();
+        result = 31 * result + mDescription.hashCode();
+        result = 31 * result + mHighText.hashCode();
+        result = 31 * result + mLowText.hashCode();
+        return result;
+    }
+
+    /**
+     * The indices of the forecast list columns in a cursor, looked up once per cursor rather
+     * than once per row.
+     */
+    static final class Columns {
+
+        final int date;
+        final int weatherId;
+        final int maxTemp;
+        final int minTemp;
+
+        Columns(Cursor cursor) {
+            date = cursor.getColumnIndexOrThrow(WeatherContract.WeatherEntry.COLUMN_DATE);
+            weatherId = cursor.getColumnIndexOrThrow(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            maxTemp = cursor.getColumnIndexOrThrow(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+            minTemp = cursor.getColumnIndexOrThrow(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.choliy.igor.sunshine;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.ContentResolverCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import com.choliy.igor.sunshine.util.DateLabelCache;
+import com.choliy.igor.sunshine.util.TraceUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the forecast list the way a CursorLoader would, but reads the cursor into immutable,
+ * preformatted {@link ForecastItem}s on its background thread and closes it right away. The
+ * main thread then has nothing left to query or format while the list is scrolled.
+ * <p>
+ * Like a CursorLoader, it loads again whenever the data behind its URI changes, which includes
+ * the SettingsFragment announcing a change of units. Unlike one, it doesn't listen to the dated
+ * URIs below its own, which a sync notifies one by one; it listens to a separate notification URI
+ * instead, which a sync notifies once. Since the items hold their formatted dates, it also loads
+ * again when the date, the clock or the time zone changes, so "Today" moves along with the day.
+ */
+public class ForecastListLoader extends AsyncTaskLoader<List<ForecastItem>> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final DateLabelCache.OnInvalidatedListener mDateListener =
+            new DateLabelCache.OnInvalidatedListener() {
+                @Override
+                public void onLabelsInvalidated() {
+                    onContentChanged();
+                }
+            };
+    private final Uri mUri;
+    private final Uri mNotificationUri;
+    private final String[] mProjection;
+    private final String mSelection;
+    private final String mSortOrder;
+
+    private List<ForecastItem> mItems;
+    private CancellationSignal mCancellationSignal;
+    private boolean mObserverRegistered;
+
+    /**
+     * @param context          Used to query the provider and format the days
+     * @param uri              The forecast to load
+     * @param notificationUri  Notified once whenever the forecast was replaced
+     * @param projection       At least the columns {@link ForecastItem} reads
+     * @param selection        Which days to load
+     * @param sortOrder        The order of the days in the list
+     */
+    public ForecastListLoader(Context context, Uri uri, Uri notificationUri, String[] projection,
+                              String selection, String sortOrder) {
+        super(context);
+        mUri = uri;
+        mNotificationUri = notificationUri;
+        mProjection = projection;
+        mSelection = selection;
+        mSortOrder = sortOrder;
+    }
+
+    @Override
+    public List<ForecastItem> loadInBackground() {
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) throw new OperationCanceledException();
+            mCancellationSignal = new CancellationSignal();
+        }
+
+        TraceUtils.beginSection("ForecastListLoader.loadInBackground");
+        try {
+            Cursor cursor = ContentResolverCompat.query(getContext().getContentResolver(),
+                    mUri, mProjection, mSelection, null, mSortOrder, mCancellationSignal);
+            if (cursor == null) return Collections.emptyList();
+
+            try {
+                List<ForecastItem> items = new ArrayList<>(cursor.getCount());
+                ForecastItem.Columns columns = new ForecastItem.Columns(cursor);
+                while (cursor.moveToNext()) {
+                    mCancellationSignal.throwIfCanceled();
+                    items.add(ForecastItem.fromCursor(getContext(), cursor, columns));
+                }
+                return Collections.unmodifiableList(items);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            TraceUtils.endSection();
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+
+        synchronized (this) {
+            if (mCancellationSignal != null) mCancellationSignal.cancel();
+        }
+    }
+
+    @Override
+    public void deliverResult(List<ForecastItem> items) {
+        if (isReset()) return;
+
+        mItems = items;
+        if (isStarted()) super.deliverResult(items);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        /*
+         * The cursor is closed as soon as it's read, so it can't tell us about changes; the
+         * observer watches the URIs instead. Without their descendants, or a sync would reload
+         * the list once for every day that changed.
+         */
+        if (!mObserverRegistered) {
+            ContentResolver contentResolver = getContext().getContentResolver();
+            contentResolver.registerContentObserver(mUri, false, mObserver);
+            contentResolver.registerContentObserver(mNotificationUri, false, mObserver);
+            DateLabelCache.getInstance(getContext()).registerOnInvalidatedListener(mDateListener);
+            mObserverRegistered = true;
+        }
+
+        if (mItems != null) deliverResult(mItems);
+        if (takeContentChanged() || mItems == null) forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            DateLabelCache.getInstance(getContext()).unregisterOnInvalidatedListener(mDateListener);
+            mObserverRegistered = false;
+        }
+        mItems = null;
+    }
+}
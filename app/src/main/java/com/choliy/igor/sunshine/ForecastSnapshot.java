@@ -0,0 +1,178 @@
+package com.choliy.igor.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.choliy.igor.sunshine.activity.ForecastActivity;
+import com.choliy.igor.sunshine.data.WeatherContract;
+import com.choliy.igor.sunshine.util.DateTimeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A copy of the forecast list as of the last sync, kept in a small binary file so a cold start can
+ * show the forecast in its first frame, without waiting for the database to be opened and
+ * queried. {@link ForecastListLoader} catches up with the database right after.
+ * <p>
+ * The file holds the stored values of each day rather than their labels, so it's formatted in the
+ * current units and locale when it's read. Its layout is:
+ * <pre>
+ *     int    magic number
+ *     int    version
+ *     UTF    location setting the forecast is for
+ *     int    number of days
+ *     then for every day, in the order of the list:
+ *     long   normalized UTC date
+ *     int    weather condition ID
+ *     double high temperature, in Celsius
+ *     double low temperature, in Celsius
+ * </pre>
+ */
+public final class ForecastSnapshot {
+
+    private static final String TAG = ForecastSnapshot.class.getSimpleName();
+
+    public static final String FILE_NAME = "forecast_snapshot.bin";
+
+    private static final int MAGIC = 0x53554e53;
+    private static final int VERSION = 1;
+
+    /* A snapshot is about half a kilobyte, anything much bigger isn't one */
+    private static final int MAX_SIZE_BYTES = 64 * 1024;
+
+    private ForecastSnapshot() {
+    }
+
+    /**
+     * Takes a snapshot of the forecast list of the given location, from today onwards, as it's
+     * stored in the database now. Replaces the previous snapshot, if any.
+     *
+     * @param context         Used to query the database and find the files directory
+     * @param locationSetting The location whose forecast to take a snapshot of
+     */
+    public static void save(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithLocation(locationSetting),
+                ForecastActivity.MAIN_FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(locationSetting);
+            out.writeInt(cursor.getCount());
+
+            ForecastItem.Columns columns = new ForecastItem.Columns(cursor);
+            while (cursor.moveToNext()) {
+                out.writeLong(cursor.getLong(columns.date));
+                out.writeInt(cursor.getInt(columns.weatherId));
+                out.writeDouble(cursor.getDouble(columns.maxTemp));
+                out.writeDouble(cursor.getDouble(columns.minTemp));
+            }
+            out.flush();
+        } catch (IOException e) {
+            /* Writing to memory doesn't fail */
+            throw new IllegalStateException(e);
+        } finally {
+            cursor.close();
+        }
+
+        /* Written next to the old one and renamed over it, so a reader never sees half of it */
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File tempFile = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            bytes.writeTo(out);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) throw new IOException("Couldn't rename " + tempFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't save the forecast snapshot: " + e.getMessage());
+            tempFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    /* Nothing left to do with it */
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot of the given location's forecast list, from today onwards, and formats
+     * its days. The file is small and read in one go, so this is fine to call on the main thread
+     * while the first frame is being built.
+     *
+     * @param context         Used to find the files directory, and to format the days
+     * @param locationSetting The location whose forecast is about to be shown
+     * @return The days of the forecast, or null if there is no usable snapshot of the location
+     */
+    public static List<ForecastItem> load(Context context, String locationSetting) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        long length = file.length();
+        if (length == 0 || length > MAX_SIZE_BYTES) return null;
+
+        byte[] bytes = new byte[(int) length];
+        try {
+            readFully(file, bytes);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (!locationSetting.equals(in.readUTF())) return null;
+
+            /* A day that passed since the snapshot was taken isn't shown anymore */
+            long today = DateTimeUtils.getNormalizedUtcDateForToday();
+
+            int count = in.readInt();
+            List<ForecastItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long date = in.readLong();
+                int weatherId = in.readInt();
+                double high = in.readDouble();
+                double low = in.readDouble();
+                if (date < today) continue;
+
+                items.add(ForecastItem.create(context, date, weatherId, high, low));
+            }
+            return Collections.unmodifiableList(items);
+        } catch (IOException e) {
+            /* Truncated or otherwise broken, the loader will have the forecast soon anyway */
+            Log.w(TAG, "Couldn't read the forecast snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void readFully(File file, byte[] buffer) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < buffer.length) {
+                int read = in.read(buffer, offset, buffer.length - offset);
+                if (read == -1) throw new IOException("Unexpected end of " + file);
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
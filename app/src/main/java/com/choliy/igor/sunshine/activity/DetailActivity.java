@@ -17,6 +17,7 @@ import com.choliy.igor.sunshine.R;
 import com.choliy.igor.sunshine.data.WeatherContract;
 import com.choliy.igor.sunshine.databinding.ActivityDetailBinding;
 import com.choliy.igor.sunshine.util.DateTimeUtils;
+import com.choliy.igor.sunshine.util.TraceUtils;
 import com.choliy.igor.sunshine.util.WeatherUtils;
 
 public class DetailActivity extends AppCompatActivity implements
@@ -121,6 +122,15 @@ public class DetailActivity extends AppCompatActivity implements
      */
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        TraceUtils.beginSection("DetailActivity.onLoadFinished");
+        try {
+            bindWeather(cursor);
+        } finally {
+            TraceUtils.endSection();
+        }
+    }
+
+    private void bindWeather(Cursor cursor) {
 
         /*
          * If we have valid data, we want to continue on to bind that data to the UI. If we don't
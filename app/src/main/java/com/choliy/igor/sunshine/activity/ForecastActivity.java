@@ -1,11 +1,10 @@
 package com.choliy.igor.sunshine.activity;
 
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
@@ -17,14 +16,22 @@ import android.view.View;
 import android.widget.ProgressBar;
 
 import com.choliy.igor.sunshine.ForecastAdapter;
+import com.choliy.igor.sunshine.ForecastItem;
+import com.choliy.igor.sunshine.ForecastListLoader;
+import com.choliy.igor.sunshine.ForecastSnapshot;
 import com.choliy.igor.sunshine.R;
 import com.choliy.igor.sunshine.data.WeatherContract;
+import com.choliy.igor.sunshine.sync.SyncScheduler;
+import com.choliy.igor.sunshine.util.AppExecutors;
+import com.choliy.igor.sunshine.util.Metrics;
 import com.choliy.igor.sunshine.util.PreferencesUtils;
 import com.choliy.igor.sunshine.util.SyncUtils;
 
+import java.util.List;
+
 public class ForecastActivity extends AppCompatActivity implements
         ForecastAdapter.AdapterOnClickHandler,
-        LoaderManager.LoaderCallbacks<Cursor> {
+        LoaderManager.LoaderCallbacks<List<ForecastItem>> {
 
     private static final String TAG = ForecastActivity.class.getSimpleName();
 
@@ -43,6 +50,9 @@ public class ForecastActivity extends AppCompatActivity implements
     private RecyclerView mRecyclerView;
     private int mPosition = RecyclerView.NO_POSITION;
 
+    /* The location setting the forecast loader is currently loading the weather of */
+    private String mLocationSetting;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -57,9 +67,56 @@ public class ForecastActivity extends AppCompatActivity implements
 
         showLoading();
 
+        mLocationSetting = PreferencesUtils.getPreferredWeatherLocation(this);
+
+        /*
+         * Show the forecast as of the last sync in the very first frame, rather than a progress
+         * bar until the database is opened and queried. The loader catches up right after, and
+         * only the days that differ from the snapshot are redrawn.
+         */
+        long start = System.nanoTime();
+        List<ForecastItem> snapshot = ForecastSnapshot.load(this, mLocationSetting);
+        Metrics.recordSince("ui.snapshot_load_us", start);
+        if (snapshot != null && !snapshot.isEmpty()) {
+            mForecastAdapter.swapForecast(snapshot);
+            showWeatherDataView();
+        }
+
         /* This connects our Activity into the loader lifecycle */
         getSupportLoaderManager().initLoader(FORECAST_LOADER_ID, null, this);
         SyncUtils.initialize(this);
+
+        /*
+         * Learns when the user usually looks at the forecast, to have it fresh by then. Only a
+         * launch counts as an open, not a rotation or coming back from the settings. Scheduling
+         * the pre-fetch talks to Google Play services, so it's kept off the main thread.
+         */
+        if (savedInstanceState == null) {
+            final Context appContext = getApplicationContext();
+            AppExecutors.io().execute(AppExecutors.Priority.BACKGROUND, new Runnable() {
+                @Override
+                public void run() {
+                    SyncScheduler.onAppOpened(appContext);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        /*
+         * If the location was changed in the settings, show the forecast of the new location.
+         * Forecasts of recently viewed locations are kept in the database, so this is usually
+         * instant, while the sync started by the SettingsFragment refreshes it.
+         */
+        String locationSetting = PreferencesUtils.getPreferredWeatherLocation(this);
+        if (!locationSetting.equals(mLocationSetting)) {
+            mLocationSetting = locationSetting;
+            mPosition = RecyclerView.NO_POSITION;
+            getSupportLoaderManager().restartLoader(FORECAST_LOADER_ID, null, this);
+        }
     }
 
     @Override
@@ -94,7 +151,8 @@ public class ForecastActivity extends AppCompatActivity implements
     @Override
     public void onForecastItemClick(long date) {
         Intent weatherDetailIntent = new Intent(ForecastActivity.this, DetailActivity.class);
-        Uri uriForDateClicked = WeatherContract.WeatherEntry.buildWeatherUriWithDate(date);
+        Uri uriForDateClicked = WeatherContract.WeatherEntry
+                .buildWeatherUriWithLocationAndDate(mLocationSetting, date);
         weatherDetailIntent.setData(uriForDateClicked);
         startActivity(weatherDetailIntent);
     }
@@ -109,12 +167,13 @@ public class ForecastActivity extends AppCompatActivity implements
      * @return A new Loader instance that is ready to start loading.
      */
     @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, Bundle args) {
+    public Loader<List<ForecastItem>> onCreateLoader(int loaderId, Bundle args) {
         switch (loaderId) {
             case FORECAST_LOADER_ID:
 
-                /* URI for all rows of weather data in our weather table */
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
+                /* URI for all rows of weather data of the preferred location */
+                Uri forecastQueryUri = WeatherContract.WeatherEntry
+                        .buildWeatherUriWithLocation(mLocationSetting);
 
                 /* Sort order: Ascending by date */
                 String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
@@ -126,8 +185,10 @@ public class ForecastActivity extends AppCompatActivity implements
                  */
                 String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
 
-                return new CursorLoader(this,
+                /* The days are read and formatted off the main thread, ready to be bound */
+                return new ForecastListLoader(this,
                         forecastQueryUri,
+                        WeatherContract.LocationEntry.buildLocationUri(mLocationSetting),
                         MAIN_FORECAST_PROJECTION,
                         selection,
                         null,
@@ -144,8 +205,8 @@ public class ForecastActivity extends AppCompatActivity implements
      * @param data   The data generated by the Loader.
      */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+    public void onLoadFinished(Loader<List<ForecastItem>> loader, List<ForecastItem> data) {
+        mForecastAdapter.swapForecast(data);
 
         /* If mPosition equals RecyclerView.NO_POSITION, set it to 0 */
         if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
@@ -153,13 +214,13 @@ public class ForecastActivity extends AppCompatActivity implements
         /* Smooth scroll the RecyclerView to mPosition */
         mRecyclerView.smoothScrollToPosition(mPosition);
 
-        /* If the Cursor's size is not equal to 0, call showWeatherDataView */
-        if (data.getCount() != 0) showWeatherDataView();
+        /* If the forecast isn't empty, call showWeatherDataView */
+        if (!data.isEmpty()) showWeatherDataView();
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+    public void onLoaderReset(Loader<List<ForecastItem>> loader) {
+        mForecastAdapter.swapForecast(null);
     }
 
     /**
@@ -1,9 +1,12 @@
 package com.choliy.igor.sunshine.data;
 
+import android.content.ContentResolver;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 import android.util.Log;
 
+import com.choliy.igor.sunshine.core.ForecastBatch;
 import com.choliy.igor.sunshine.util.DateTimeUtils;
 
 /**
@@ -36,6 +39,70 @@ public final class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * Path appended to the weather path to scope weather queries to a single location:
+     *
+     *     content://com.choliy.igor.sunshine/weather/location/Kyiv
+     *
+     * On its own, it's the path of the location table.
+     */
+    public static final String PATH_LOCATION = "location";
+
+    /*
+     * Path appended to the weather path for the "replace forecast" operation. Bulk inserting into
+     * this URI merges the new forecast for a location into the stored one in a single
+     * transaction:
+     *
+     *     content://com.choliy.igor.sunshine/weather/replace/Kyiv
+     */
+    public static final String PATH_REPLACE = "replace";
+
+    /* Inner class that defines the table contents of the location table */
+    public static final class LocationEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the location table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_LOCATION)
+                .build();
+
+        /* Used internally as the name of our location table */
+        public static final String TABLE_NAME = "location";
+
+        /*
+         * The location setting string is what is sent to the weather server as the location
+         * query, e.g. "Mountain View, CA 94043". Every location setting has exactly one row.
+         */
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        /*
+         * The last time (in UNIX time) the forecast for this location was looked at. When too many
+         * locations are cached, the least recently viewed ones are evicted first.
+         */
+        public static final String COLUMN_LAST_VIEWED = "last_viewed";
+
+        /*
+         * The last time (in UNIX time) the forecast for this location was confirmed to be current,
+         * either because a sync stored a new one or because the server said it hadn't changed.
+         * Zero if the location was never synced.
+         */
+        public static final String COLUMN_LAST_SYNC = "last_sync";
+
+        /**
+         * Builds a URI for the location row of a location setting. Querying it is a cheap way to
+         * look up the sync metadata of a location without touching its forecast.
+         *
+         *     content://com.choliy.igor.sunshine/location/Kyiv
+         *
+         * @param locationSetting The location setting, as stored in the preferences
+         * @return Uri to query or update the location row
+         */
+        public static Uri buildLocationUri(String locationSetting) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(locationSetting)
+                    .build();
+        }
+    }
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -47,6 +114,9 @@ public final class WeatherContract {
         /* Used internally as the name of our weather table */
         public static final String TABLE_NAME = "weather";
 
+        /* The _ID of the location row this weather entry belongs to */
+        public static final String COLUMN_LOCATION_ID = "location_id";
+
         /*
          * The date column will store the UTC date that correlates to the local date for which
          * each particular weather row represents. For example, if you live in the Eastern
@@ -80,17 +150,38 @@ public final class WeatherContract {
          */
         public static final String COLUMN_DEGREES = "degrees";
 
+        /* The ContentProvider#call method behind replaceForecast, and the key of its result */
+        public static final String METHOD_REPLACE_FORECAST = "replace_forecast";
+        public static final String EXTRA_ROWS_CHANGED = "rows_changed";
+
         /**
-         * Builds a URI that adds the weather date to the end of the forecast content URI path.
-         * This is used to query details about a single weather entry by date. This is what we
-         * use for the detail view query. We assume a normalized date is passed to this method.
+         * Builds a URI that adds the location setting to the end of the forecast content URI path.
+         * This is used to query the forecast of a single location, and is what we use for the
+         * forecast list query.
          *
-         * @param date Normalized date in milliseconds
+         * @param locationSetting The location setting, as stored in the preferences
+         * @return Uri to query the forecast of a single location
+         */
+        public static Uri buildWeatherUriWithLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_LOCATION)
+                    .appendPath(locationSetting)
+                    .build();
+        }
+
+        /**
+         * Builds a URI that adds the location setting and the weather date to the end of the
+         * forecast content URI path. This is used to query details about a single weather entry
+         * by date. This is what we use for the detail view query. We assume a normalized date is
+         * passed to this method.
+         *
+         * @param locationSetting The location setting, as stored in the preferences
+         * @param date            Normalized date in milliseconds
          * @return Uri to query details about a single weather entry
          */
-        public static Uri buildWeatherUriWithDate(long date) {
+        public static Uri buildWeatherUriWithLocationAndDate(String locationSetting, long date) {
 
-            Uri dateUri = CONTENT_URI.buildUpon()
+            Uri dateUri = buildWeatherUriWithLocation(locationSetting).buildUpon()
                     .appendPath(Long.toString(date))
                     .build();
 
@@ -99,6 +190,24 @@ public final class WeatherContract {
             return dateUri;
         }
 
+        /**
+         * Builds the URI used to replace the whole forecast of a location at once. Only the rows
+         * that actually changed are written, and only their dated URIs (see
+         * {@link #buildWeatherUriWithLocationAndDate(String, long)}) are notified, after the new
+         * forecast has been committed. If anything changed, the location's URI (see
+         * {@link LocationEntry#buildLocationUri(String)}) is notified once as well, which is what
+         * the forecast list listens to.
+         *
+         * @param locationSetting The location setting the forecast was fetched for
+         * @return Uri to bulk insert a new forecast into
+         */
+        public static Uri buildReplaceUriWithLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_REPLACE)
+                    .appendPath(locationSetting)
+                    .build();
+        }
+
         /**
          * Returns just the selection part of the weather query from a normalized today value.
          * This is used to get a weather forecast from today's date. To make this easy to use
@@ -110,5 +219,59 @@ public final class WeatherContract {
             long normalizedUtcNow = DateTimeUtils.normalizeDate(System.currentTimeMillis());
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
+
+        /**
+         * Replaces the stored forecast of a location with a new one, the same way a bulk insert
+         * into {@link #buildReplaceUriWithLocation(String)} does. The forecast is handed to the
+         * provider as primitive arrays rather than as one ContentValues map per day, so its
+         * values are neither boxed on the way in nor unboxed again to be compared and bound.
+         *
+         * @param contentResolver Used to reach the provider
+         * @param locationSetting The location setting the forecast was fetched for
+         * @param forecast        The new forecast
+         * @return The number of rows that were written or removed
+         */
+        public static int replaceForecast(ContentResolver contentResolver,
+                                          String locationSetting,
+                                          ForecastBatch forecast) {
+            Bundle result = contentResolver.call(CONTENT_URI, METHOD_REPLACE_FORECAST,
+                    locationSetting, toBundle(forecast));
+            return result != null ? result.getInt(EXTRA_ROWS_CHANGED) : 0;
+        }
+
+        /**
+         * Packs a forecast into the extras of a {@link #METHOD_REPLACE_FORECAST} call. The
+         * forecast's own arrays go into the Bundle, and the provider runs in the app's process,
+         * so the Bundle is never parceled and the arrays reach the provider as they are.
+         */
+        static Bundle toBundle(ForecastBatch forecast) {
+            Bundle extras = new Bundle();
+            extras.putLongArray(COLUMN_DATE, forecast.getDateArray());
+            extras.putIntArray(COLUMN_WEATHER_ID, forecast.getWeatherIdArray());
+            extras.putDoubleArray(COLUMN_MIN_TEMP, forecast.getMinTempArray());
+            extras.putDoubleArray(COLUMN_MAX_TEMP, forecast.getMaxTempArray());
+            extras.putDoubleArray(COLUMN_HUMIDITY, forecast.getHumidityArray());
+            extras.putDoubleArray(COLUMN_PRESSURE, forecast.getPressureArray());
+            extras.putDoubleArray(COLUMN_WIND_SPEED, forecast.getWindSpeedArray());
+            extras.putDoubleArray(COLUMN_DEGREES, forecast.getDegreesArray());
+            return extras;
+        }
+
+        /**
+         * Unpacks the forecast of a {@link #METHOD_REPLACE_FORECAST} call, wrapping its arrays.
+         *
+         * @throws IllegalArgumentException If a column is missing or the columns differ in length
+         */
+        static ForecastBatch fromBundle(Bundle extras) {
+            return new ForecastBatch(
+                    extras.getLongArray(COLUMN_DATE),
+                    extras.getIntArray(COLUMN_WEATHER_ID),
+                    extras.getDoubleArray(COLUMN_MIN_TEMP),
+                    extras.getDoubleArray(COLUMN_MAX_TEMP),
+                    extras.getDoubleArray(COLUMN_HUMIDITY),
+                    extras.getDoubleArray(COLUMN_PRESSURE),
+                    extras.getDoubleArray(COLUMN_WIND_SPEED),
+                    extras.getDoubleArray(COLUMN_DEGREES));
+        }
     }
 }
\ No newline at end of file
@@ -5,9 +5,13 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import static android.provider.BaseColumns._ID;
+import static com.choliy.igor.sunshine.data.WeatherContract.LocationEntry.COLUMN_LAST_SYNC;
+import static com.choliy.igor.sunshine.data.WeatherContract.LocationEntry.COLUMN_LAST_VIEWED;
+import static com.choliy.igor.sunshine.data.WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING;
 import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.COLUMN_DATE;
 import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.COLUMN_DEGREES;
 import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.COLUMN_HUMIDITY;
+import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.COLUMN_LOCATION_ID;
 import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.COLUMN_MAX_TEMP;
 import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.COLUMN_MIN_TEMP;
 import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.COLUMN_PRESSURE;
@@ -21,18 +25,43 @@ import static com.choliy.igor.sunshine.data.WeatherContract.WeatherEntry.TABLE_N
 class WeatherDbHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "weather.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String LOCATION_TABLE_NAME = WeatherContract.LocationEntry.TABLE_NAME;
+    private static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date_index";
 
     WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    /**
+     * Weather rows reference their location with ON DELETE CASCADE, so evicting a location also
+     * removes its forecast. SQLite only enforces that when foreign keys are switched on.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.setForeignKeyConstraintsEnabled(true);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_LOCATION_TABLE =
+                "CREATE TABLE " + LOCATION_TABLE_NAME + " (" +
+
+                        _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                        COLUMN_LAST_VIEWED + " INTEGER NOT NULL DEFAULT 0, " +
+                        COLUMN_LAST_SYNC + " INTEGER NOT NULL DEFAULT 0, " +
+
+                        /* Every location setting is stored exactly once */
+                        "UNIQUE (" + COLUMN_LOCATION_SETTING + "));";
+
         final String SQL_CREATE_WEATHER_TABLE =
                 "CREATE TABLE " + TABLE_NAME + " (" +
 
                         _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        COLUMN_LOCATION_ID + " INTEGER NOT NULL REFERENCES " +
+                        LOCATION_TABLE_NAME + " (" + _ID + ") ON DELETE CASCADE, " +
                         COLUMN_DATE + " INTEGER NOT NULL, " +
                         COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
                         COLUMN_MIN_TEMP + " REAL NOT NULL, " +
@@ -43,20 +72,37 @@ class WeatherDbHelper extends SQLiteOpenHelper {
                         COLUMN_DEGREES + " REAL NOT NULL, " +
 
                         /*
-                         * To ensure this table can only contain one weather entry per date, we declare
-                         * the date column to be unique. We also specify "ON CONFLICT REPLACE". This tells
-                         * SQLite that if we have a weather entry for a certain date and we attempt to
-                         * insert another weather entry with that date, we replace the old weather entry.
+                         * To ensure this table can only contain one weather entry per date and
+                         * location, we declare the pair to be unique. We also specify "ON CONFLICT
+                         * REPLACE". This tells SQLite that if we have a weather entry for a certain
+                         * date and location and we attempt to insert another weather entry for
+                         * them, we replace the old weather entry.
                          */
-                        "UNIQUE (" + COLUMN_DATE + ") ON CONFLICT REPLACE);";
+                        "UNIQUE (" + COLUMN_LOCATION_ID + ", " + COLUMN_DATE +
+                        ") ON CONFLICT REPLACE);";
+
+        /*
+         * The forecast list only reads these columns for one location, ordered by date. Having
+         * them all in the index lets SQLite answer that query without touching the table.
+         */
+        final String SQL_CREATE_WEATHER_INDEX =
+                "CREATE INDEX " + WEATHER_LOCATION_DATE_INDEX + " ON " + TABLE_NAME + " (" +
+                        COLUMN_LOCATION_ID + ", " +
+                        COLUMN_DATE + ", " +
+                        COLUMN_WEATHER_ID + ", " +
+                        COLUMN_MIN_TEMP + ", " +
+                        COLUMN_MAX_TEMP + ");";
 
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        final String SQL_DELETE_WEATHER_TABLE = "DROP TABLE IF EXIST " + TABLE_NAME;
-        sqLiteDatabase.execSQL(SQL_DELETE_WEATHER_TABLE);
+        /* The weather data is only a cache of the server's data, so it's fine to drop it */
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LOCATION_TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
-}
\ No newline at end of file
+}
@@ -6,11 +6,24 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.OperationCanceledException;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
+import android.util.LongSparseArray;
 
+import com.choliy.igor.sunshine.core.ForecastBatch;
 import com.choliy.igor.sunshine.util.DateTimeUtils;
+import com.choliy.igor.sunshine.util.Metrics;
+import com.choliy.igor.sunshine.util.TraceUtils;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
@@ -19,27 +32,88 @@ import com.choliy.igor.sunshine.util.DateTimeUtils;
 public class WeatherProvider extends ContentProvider {
 
     public static final int CODE_WEATHER = 100;
-    public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_WEATHER_WITH_LOCATION = 101;
+    public static final int CODE_WEATHER_WITH_LOCATION_AND_DATE = 102;
+    public static final int CODE_WEATHER_REPLACE = 103;
+    public static final int CODE_LOCATION = 200;
+
+    /*
+     * How many locations we keep forecasts for. Switching back to any of them is served from the
+     * database; the least recently viewed ones beyond this are evicted after a sync.
+     */
+    private static final int MAX_CACHED_LOCATIONS = 5;
+
+    /*
+     * How long a view of the same location isn't recorded again. The list queries its forecast on
+     * every reload, and so does every snapshot, but eviction only needs to know roughly when each
+     * location was last looked at.
+     */
+    private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /* Every weather column apart from the date, used to tell whether a day's forecast changed */
+    private static final String[] WEATHER_COMPARED_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES};
+
+    /*
+     * Compiled once per bulk insert and re-bound for every row. The columns are the location ID
+     * and the date followed by WEATHER_COMPARED_COLUMNS, in that order.
+     */
+    private static final String SQL_INSERT_WEATHER = "INSERT OR REPLACE INTO "
+            + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+            + WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + ", "
+            + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+            + TextUtils.join(", ", WEATHER_COMPARED_COLUMNS)
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /* Scopes a weather query to the location whose setting is given as the selection argument */
+    private static final String SQL_SELECT_LOCATION_SETTING =
+            WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = (SELECT "
+                    + WeatherContract.LocationEntry._ID + " FROM "
+                    + WeatherContract.LocationEntry.TABLE_NAME + " WHERE "
+                    + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?)";
 
     /* The URI Matcher used by this content provider */
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private ContentResolver mContentResolver;
     private WeatherDbHelper mOpenHelper;
 
+    /* The location touchLocation last recorded a view of, and when, guarded by this */
+    private String mTouchedLocation;
+    private long mTouchedAt;
+
     /**
-     * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
-     * CODE_WEATHER_WITH_DATE constants defined above.
+     * Creates the UriMatcher that will match each URI to the CODE_WEATHER,
+     * CODE_WEATHER_WITH_LOCATION, CODE_WEATHER_WITH_LOCATION_AND_DATE, CODE_WEATHER_REPLACE and
+     * CODE_LOCATION constants defined above.
      */
     public static UriMatcher buildUriMatcher() {
 
         final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
         final String authority = WeatherContract.CONTENT_AUTHORITY;
+        final String locationPath = WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_LOCATION;
 
         /* This URI is content://com.choliy.igor.sunshine/weather */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, CODE_WEATHER);
 
-        /* This URI content://com.choliy.igor.sunshine/weather/1472214172 */
-        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
+        /* This URI is content://com.choliy.igor.sunshine/weather/location/Kyiv */
+        matcher.addURI(authority, locationPath + "/*", CODE_WEATHER_WITH_LOCATION);
+
+        /* This URI is content://com.choliy.igor.sunshine/weather/location/Kyiv/1472214172 */
+        matcher.addURI(authority, locationPath + "/*/#", CODE_WEATHER_WITH_LOCATION_AND_DATE);
+
+        /* This URI is content://com.choliy.igor.sunshine/weather/replace/Kyiv */
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_REPLACE + "/*",
+                CODE_WEATHER_REPLACE);
+
+        /* This URI is content://com.choliy.igor.sunshine/location/Kyiv */
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/*", CODE_LOCATION);
 
         return matcher;
     }
@@ -51,13 +125,18 @@ public class WeatherProvider extends ContentProvider {
      */
     @Override
     public boolean onCreate() {
-        Context context = getContext();
-        mOpenHelper = new WeatherDbHelper(context);
+        TraceUtils.beginSection("WeatherProvider.onCreate");
+        try {
+            Context context = getContext();
+            mOpenHelper = new WeatherDbHelper(context);
 
-        assert context != null;
-        mContentResolver = context.getContentResolver();
+            assert context != null;
+            mContentResolver = context.getContentResolver();
 
-        return true;
+            return true;
+        } finally {
+            TraceUtils.endSection();
+        }
     }
 
     /**
@@ -74,25 +153,60 @@ public class WeatherProvider extends ContentProvider {
      */
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        TraceUtils.beginSection("WeatherProvider.bulkInsert");
+        try {
+            return doBulkInsert(uri, values);
+        } finally {
+            TraceUtils.endSection();
+        }
+    }
+
+    /**
+     * Handles {@link WeatherContract.WeatherEntry#METHOD_REPLACE_FORECAST}, which replaces the
+     * forecast of the location given as the argument with the forecast packed into the extras.
+     * It does the same as a bulk insert into the replace URI, without a ContentValues map per
+     * day.
+     *
+     * @param method The name of the method
+     * @param arg    The location setting the forecast was fetched for
+     * @param extras The forecast, see WeatherContract.WeatherEntry#toBundle
+     * @return The number of rows that were written or removed, under
+     * {@link WeatherContract.WeatherEntry#EXTRA_ROWS_CHANGED}
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (!WeatherContract.WeatherEntry.METHOD_REPLACE_FORECAST.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        if (arg == null || extras == null) {
+            throw new IllegalArgumentException("A location and a forecast are required");
+        }
+
+        TraceUtils.beginSection("WeatherProvider.replaceForecast");
+        try {
+            int rowsChanged = replaceForecast(arg, WeatherContract.WeatherEntry.fromBundle(extras));
+
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.WeatherEntry.EXTRA_ROWS_CHANGED, rowsChanged);
+            return result;
+        } finally {
+            TraceUtils.endSection();
+        }
+    }
+
+    private int doBulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
 
         switch (sUriMatcher.match(uri)) {
 
-            case CODE_WEATHER:
+            case CODE_WEATHER_WITH_LOCATION: {
+                String locationSetting = uri.getPathSegments().get(2);
+
                 db.beginTransaction();
-                int rowsInserted = 0;
+                int rowsInserted;
                 try {
-                    for (ContentValues value : values) {
-                        long weatherDate = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!DateTimeUtils.isDateNormalized(weatherDate)) {
-                            throw new IllegalArgumentException("Date must be normalized to insert");
-                        }
-
-                        long id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (id != -1) {
-                            rowsInserted++;
-                        }
-                    }
+                    long locationId = getOrCreateLocationId(db, locationSetting);
+                    rowsInserted = insertWeather(db, locationId, toForecastBatch(values));
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
@@ -104,16 +218,397 @@ public class WeatherProvider extends ContentProvider {
 
                 /* Return the number of rows inserted from our implementation of bulkInsert */
                 return rowsInserted;
+            }
+
+            case CODE_WEATHER_REPLACE: {
+                String locationSetting = uri.getPathSegments().get(2);
+                return replaceForecast(locationSetting, toForecastBatch(values));
+            }
 
-            /* If the URI does match match CODE_WEATHER, return the super implementation of bulkInsert */
+            /* If the URI doesn't match our codes, return the super implementation of bulkInsert */
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Replaces the stored forecast of a location with a new one.
+     *
+     * @param locationSetting The location setting the forecast was fetched for
+     * @param forecast        The new forecast
+     * @return The number of rows that were written or removed
+     */
+    private int replaceForecast(String locationSetting, ForecastBatch forecast) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+        /*
+         * The new forecast is merged with the stored one in a single transaction: only rows whose
+         * values actually changed are written, and rows for dates that are no longer part of the
+         * forecast are removed. Observers never see a half-written table, and only the dates that
+         * changed are notified, plus the location once.
+         *
+         * The merge is cooperative about cancellation: if the calling thread is interrupted (see
+         * SyncCoordinator), it stops with an OperationCanceledException and the transaction is
+         * rolled back, leaving the stored forecast untouched.
+         *
+         * The statement is compiled before the transaction begins, so failing to compile it
+         * can't leave the transaction open.
+         */
+        SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_WEATHER);
+        long[] changedDates;
+        int rowsChanged;
+        try {
+            db.beginTransaction();
+            try {
+                long locationId = getOrCreateLocationId(db, locationSetting);
+                LongSparseArray<double[]> storedRows = queryStoredWeather(db, locationId);
+                changedDates = new long[forecast.size() + storedRows.size()];
+                rowsChanged = 0;
+
+                for (int day = 0; day < forecast.size(); day++) {
+                    throwIfInterrupted();
+
+                    long weatherDate = forecast.getDate(day);
+                    if (!DateTimeUtils.isDateNormalized(weatherDate)) {
+                        throw new IllegalArgumentException("Date must be normalized to insert");
+                    }
+
+                    double[] storedRow = storedRows.get(weatherDate);
+                    storedRows.remove(weatherDate);
+                    if (storedRow != null && !isWeatherChanged(storedRow, forecast, day)) {
+                        continue;
+                    }
+
+                    /* INSERT OR REPLACE overwrites the old row for this location and date */
+                    if (executeInsertWeather(insertStatement, locationId, forecast, day) != -1) {
+                        changedDates[rowsChanged++] = weatherDate;
+                    }
+                }
+
+                /* Whatever is left over is not part of the new forecast anymore */
+                for (int i = 0; i < storedRows.size(); i++) {
+                    long staleDate = storedRows.keyAt(i);
+                    db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                            WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ? AND "
+                                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                            new String[]{Long.toString(locationId), Long.toString(staleDate)});
+                    changedDates[rowsChanged++] = staleDate;
+                }
+
+                evictLeastRecentlyViewedLocations(db, locationId);
+
+                /* The sync metadata is committed together with the forecast it describes */
+                markLocationSynced(db, locationId);
+
+                /* Last chance to back out before the new forecast is committed */
+                throwIfInterrupted();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            insertStatement.close();
+        }
+
+        /* Days that are open in the detail view only reload if they changed */
+        for (int i = 0; i < rowsChanged; i++) {
+            mContentResolver.notifyChange(WeatherContract.WeatherEntry
+                    .buildWeatherUriWithLocationAndDate(locationSetting, changedDates[i]),
+                    null);
+        }
+
+        /*
+         * The forecast list gets a single notification for the whole forecast. It's sent to the
+         * location's URI, which isn't an ancestor of the dated ones, so the open days aren't
+         * reloaded a second time.
+         */
+        if (rowsChanged > 0) {
+            mContentResolver.notifyChange(
+                    WeatherContract.LocationEntry.buildLocationUri(locationSetting), null);
+        }
+
+        /* Return the number of rows that were written or removed */
+        return rowsChanged;
+    }
+
+    /**
+     * Returns the _ID of the location row for the given location setting, creating the row if
+     * the location has never been synced before. A new location counts as viewed right now, so it
+     * isn't the first one to be evicted. Must be called from within a transaction that the caller
+     * is responsible for.
+     *
+     * @param db              The writable database, with a transaction already begun
+     * @param locationSetting The location setting, as stored in the preferences
+     * @return The _ID of the location row
+     */
+    private long getOrCreateLocationId(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+
+        try {
+            if (cursor.moveToFirst()) return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_VIEWED, System.currentTimeMillis());
+        return db.insertOrThrow(WeatherContract.LocationEntry.TABLE_NAME, null, locationValues);
+    }
+
+    /**
+     * Deletes every location, apart from the one that was just synced, that isn't among the
+     * {@link #MAX_CACHED_LOCATIONS} most recently viewed. Their forecasts go with them through
+     * the ON DELETE CASCADE on the weather table. Must be called from within a transaction that
+     * the caller is responsible for.
+     *
+     * @param db               The writable database, with a transaction already begun
+     * @param syncedLocationId The _ID of the location that was just synced
+     */
+    private void evictLeastRecentlyViewedLocations(SQLiteDatabase db, long syncedLocationId) {
+        db.delete(WeatherContract.LocationEntry.TABLE_NAME,
+                WeatherContract.LocationEntry._ID + " != ? AND "
+                        + WeatherContract.LocationEntry._ID + " NOT IN (SELECT "
+                        + WeatherContract.LocationEntry._ID + " FROM "
+                        + WeatherContract.LocationEntry.TABLE_NAME + " ORDER BY "
+                        + WeatherContract.LocationEntry.COLUMN_LAST_VIEWED + " DESC LIMIT "
+                        + MAX_CACHED_LOCATIONS + ")",
+                new String[]{Long.toString(syncedLocationId)});
+    }
+
+    /**
+     * Records that the forecast of the given location was confirmed to be current right now.
+     * Must be called from within a transaction that the caller is responsible for.
+     *
+     * @param db         The writable database, with a transaction already begun
+     * @param locationId The _ID of the location that was just synced
+     */
+    private void markLocationSynced(SQLiteDatabase db, long locationId) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_SYNC, System.currentTimeMillis());
+        db.update(WeatherContract.LocationEntry.TABLE_NAME,
+                locationValues,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)});
+    }
+
+    /**
+     * Records that the forecast of the given location is being looked at right now, which keeps
+     * it from being evicted. Nothing is written if the same location was recorded less than
+     * {@link #TOUCH_INTERVAL_MILLIS} ago, so repeated queries don't turn into a write each.
+     *
+     * @param locationSetting The location setting, as stored in the preferences
+     */
+    private void touchLocation(String locationSetting) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (locationSetting.equals(mTouchedLocation)
+                    && now - mTouchedAt < TOUCH_INTERVAL_MILLIS) {
+                return;
+            }
+            mTouchedLocation = locationSetting;
+            mTouchedAt = now;
+        }
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_VIEWED, now);
+        mOpenHelper.getWritableDatabase().update(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                locationValues,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting});
+    }
+
+    /**
+     * Inserts the given forecast into the weather table. The INSERT statement is compiled once
+     * and re-bound for every day, rather than being rebuilt from each ContentValues map as
+     * SQLiteDatabase#insert does. Must be called from within a transaction that the caller is
+     * responsible for.
+     *
+     * @param db         The writable database, with a transaction already begun
+     * @param locationId The _ID of the location the rows belong to
+     * @param forecast   The days to add to the database
+     * @return The number of days that were inserted
+     */
+    private int insertWeather(SQLiteDatabase db, long locationId, ForecastBatch forecast) {
+        SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_WEATHER);
+        int rowsInserted = 0;
+        try {
+            for (int day = 0; day < forecast.size(); day++) {
+                if (!DateTimeUtils.isDateNormalized(forecast.getDate(day))) {
+                    throw new IllegalArgumentException("Date must be normalized to insert");
+                }
+
+                if (executeInsertWeather(insertStatement, locationId, forecast, day) != -1) {
+                    rowsInserted++;
+                }
+            }
+        } finally {
+            insertStatement.close();
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Binds one day of a forecast to a statement compiled from {@link #SQL_INSERT_WEATHER} and
+     * executes it. The values are bound straight from the forecast's primitive arrays, in the
+     * order of the statement's columns.
+     *
+     * @param insertStatement The compiled INSERT OR REPLACE statement
+     * @param locationId      The _ID of the location the row belongs to
+     * @param forecast        The forecast the day belongs to
+     * @param day             The index of the day in the forecast
+     * @return The row ID of the inserted row, or -1 if an error occurred
+     */
+    private static long executeInsertWeather(SQLiteStatement insertStatement,
+                                             long locationId,
+                                             ForecastBatch forecast,
+                                             int day) {
+        insertStatement.bindLong(1, locationId);
+        insertStatement.bindLong(2, forecast.getDate(day));
+        /* The weather ID is the only INTEGER column apart from the location and date */
+        insertStatement.bindLong(3, forecast.getWeatherId(day));
+        for (int i = 1; i < WEATHER_COMPARED_COLUMNS.length; i++) {
+            insertStatement.bindDouble(i + 3, getWeatherValue(forecast, day, i));
+        }
+        return insertStatement.executeInsert();
+    }
+
+    /**
+     * @param forecast The forecast to read from
+     * @param day      The index of the day in the forecast
+     * @param column   The index of the column in {@link #WEATHER_COMPARED_COLUMNS}
+     * @return The value of the column for the day
+     */
+    private static double getWeatherValue(ForecastBatch forecast, int day, int column) {
+        switch (column) {
+            case 0:
+                return forecast.getWeatherId(day);
+            case 1:
+                return forecast.getMinTemp(day);
+            case 2:
+                return forecast.getMaxTemp(day);
+            case 3:
+                return forecast.getHumidity(day);
+            case 4:
+                return forecast.getPressure(day);
+            case 5:
+                return forecast.getWindSpeed(day);
+            case 6:
+                return forecast.getDegrees(day);
+            default:
+                throw new IndexOutOfBoundsException("Unknown weather column: " + column);
+        }
+    }
+
+    /**
+     * Converts the rows of a bulk insert into a forecast. A row that is missing one of the
+     * weather columns is left out, the same outcome as SQLiteDatabase#insert hitting a NOT NULL
+     * constraint.
+     *
+     * @param values An array of sets of column_name/value pairs, one per day
+     * @return The complete days, in the order they were given
+     */
+    private static ForecastBatch toForecastBatch(ContentValues[] values) {
+        ForecastBatch forecast = new ForecastBatch(values.length);
+        for (ContentValues value : values) {
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Integer weatherId = value.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            Double minTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+            Double maxTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+            Double humidity = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+            Double pressure = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+            Double windSpeed = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+            Double degrees = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+            if (date == null || weatherId == null || minTemp == null || maxTemp == null
+                    || humidity == null || pressure == null || windSpeed == null
+                    || degrees == null) {
+                continue;
+            }
+
+            forecast.add(date, weatherId, minTemp, maxTemp, humidity, pressure, windSpeed, degrees);
+        }
+        return forecast;
+    }
+
+    /**
+     * Reads the stored forecast of a location into memory, keyed by date, so it can be compared
+     * with a new forecast without querying the database once per row. Must be called from within
+     * a transaction that the caller is responsible for.
+     *
+     * @param db         The writable database, with a transaction already begun
+     * @param locationId The _ID of the location to read the forecast of
+     * @return The stored weather values, in the order of {@link #WEATHER_COMPARED_COLUMNS}
+     */
+    private LongSparseArray<double[]> queryStoredWeather(SQLiteDatabase db, long locationId) {
+        String[] projection = new String[WEATHER_COMPARED_COLUMNS.length + 1];
+        projection[0] = WeatherContract.WeatherEntry.COLUMN_DATE;
+        System.arraycopy(WEATHER_COMPARED_COLUMNS, 0,
+                projection, 1, WEATHER_COMPARED_COLUMNS.length);
+
+        Cursor cursor = db.query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                projection,
+                WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+
+        LongSparseArray<double[]> storedRows = new LongSparseArray<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                double[] row = new double[WEATHER_COMPARED_COLUMNS.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = cursor.getDouble(i + 1);
+                }
+                storedRows.put(cursor.getLong(0), row);
+            }
+        } finally {
+            cursor.close();
+        }
+        return storedRows;
+    }
+
+    /**
+     * Compares a stored weather row with a day of a new forecast for the same date.
+     *
+     * @param storedRow The stored values, in the order of {@link #WEATHER_COMPARED_COLUMNS}
+     * @param forecast  The new forecast
+     * @param day       The index of the day in the new forecast
+     * @return true if any of the values differ, false if the row is unchanged
+     */
+    private static boolean isWeatherChanged(double[] storedRow, ForecastBatch forecast, int day) {
+        for (int i = 0; i < WEATHER_COMPARED_COLUMNS.length; i++) {
+            if (Double.compare(storedRow[i], getWeatherValue(forecast, day, i)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Aborts a long-running write when the thread doing it was interrupted. The interrupt flag is
+     * left set, so the caller can tell why its write failed.
+     *
+     * @throws OperationCanceledException If the current thread was interrupted
+     */
+    private static void throwIfInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new OperationCanceledException("Weather write interrupted");
+        }
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
-     * of our weather data as well as to query for the weather on a particular day.
+     * of the weather data of a location as well as to query for its weather on a particular day.
      *
      * @param uri           The URI to query
      * @param projection    The list of columns to put into the cursor. If null, all columns are
@@ -129,29 +624,71 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
+        TraceUtils.beginSection("WeatherProvider.query");
+        try {
+            return doQuery(uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            TraceUtils.endSection();
+        }
+    }
+
+    private Cursor doQuery(Uri uri, String[] projection, String selection,
+                           String[] selectionArgs, String sortOrder) {
         Cursor cursor;
 
         switch (sUriMatcher.match(uri)) {
-            case CODE_WEATHER_WITH_DATE: {
+            case CODE_WEATHER_WITH_LOCATION_AND_DATE: {
 
                 /*
-                 * In order to determine the date associated with this URI, we look at the last
-                 * path segment. In the comment above, the last path segment is 1472214172 and
-                 * represents the number of seconds since the epoch, or UTC time.
+                 * In order to determine the location and date associated with this URI, we look
+                 * at the last two path segments. In the comment above, the last path segment is
+                 * 1472214172 and represents the number of seconds since the epoch, or UTC time.
                  */
+                String locationSetting = uri.getPathSegments().get(2);
                 String normalizedUtcDateString = uri.getLastPathSegment();
-                String[] selectionArguments = new String[]{normalizedUtcDateString};
+                String[] selectionArguments = new String[]{locationSetting, normalizedUtcDateString};
 
                 cursor = mOpenHelper.getReadableDatabase().query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        SQL_SELECT_LOCATION_SETTING + " AND "
+                                + WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
                         selectionArguments,
                         null,
                         null,
                         sortOrder);
                 break;
             }
+            case CODE_WEATHER_WITH_LOCATION: {
+                String locationSetting = uri.getPathSegments().get(2);
+                touchLocation(locationSetting);
+
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        projection,
+                        DatabaseUtils.concatenateWhere(SQL_SELECT_LOCATION_SETTING, selection),
+                        DatabaseUtils.appendSelectionArgs(
+                                new String[]{locationSetting}, selectionArgs),
+                        null,
+                        null,
+                        sortOrder);
+                break;
+            }
+            case CODE_LOCATION: {
+                /* A lookup by the UNIQUE location setting, which SQLite answers from its index */
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        projection,
+                        DatabaseUtils.concatenateWhere(
+                                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                                selection),
+                        DatabaseUtils.appendSelectionArgs(
+                                new String[]{uri.getLastPathSegment()}, selectionArgs),
+                        null,
+                        null,
+                        sortOrder);
+                break;
+            }
             case CODE_WEATHER: {
                 cursor = mOpenHelper.getReadableDatabase().query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
@@ -178,9 +715,33 @@ public class WeatherProvider extends ContentProvider {
         throw new RuntimeException("We are not implementing insert in Sunshine. Use bulkInsert instead");
     }
 
+    /**
+     * Updates the location row of a location setting, e.g. to record that a sync found its
+     * forecast unchanged. The weather rows themselves are only ever written by bulkInsert.
+     *
+     * @param uri           The location URI of the row to update
+     * @param contentValues The new column_name/value pairs
+     * @param selection     An optional restriction to apply to the update
+     * @param selectionArgs Used in conjunction with the selection statement
+     * @return The number of rows updated, 0 if the location was never synced
+     */
     @Override
-    public int update(@NonNull Uri uri, ContentValues contentValues, String s, String[] strings) {
-        throw new RuntimeException("We are not implementing update in Sunshine");
+    public int update(@NonNull Uri uri, ContentValues contentValues, String selection,
+                      String[] selectionArgs) {
+        switch (sUriMatcher.match(uri)) {
+            case CODE_LOCATION:
+                return mOpenHelper.getWritableDatabase().update(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        contentValues,
+                        DatabaseUtils.concatenateWhere(
+                                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                                selection),
+                        DatabaseUtils.appendSelectionArgs(
+                                new String[]{uri.getLastPathSegment()}, selectionArgs));
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
     }
 
     /**
@@ -230,6 +791,17 @@ public class WeatherProvider extends ContentProvider {
         throw new RuntimeException("We are not implementing getType in Sunshine.");
     }
 
+    /**
+     * Prints Sunshine's {@link Metrics}, run {@code adb shell dumpsys activity provider
+     * com.choliy.igor.sunshine/.data.WeatherProvider} to see them. The provider is used for this
+     * because it lives as long as the process and dumpsys can reach it without any extra
+     * component. The platform only calls this from API 18 on.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        Metrics.dump(writer);
+    }
+
     /**
      * You do not need to call this method. This is a method specifically to assist the testing
      * framework in running smoothly. You can read more at:
@@ -0,0 +1,51 @@
+package com.choliy.igor.sunshine.network;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of byte buffers used to copy HTTP response bodies. Reading a response needs a
+ * scratch buffer for a few milliseconds only, so keeping a handful of them around saves
+ * allocating (and garbage collecting) a new one for every request.
+ */
+public final class BufferPool {
+
+    /* Size of every pooled buffer, large enough to read a typical TCP chunk at once */
+    public static final int BUFFER_SIZE = 8 * 1024;
+
+    /* Syncs run one at a time, so there is rarely more than one buffer in use */
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final ArrayDeque<byte[]> sBuffers = new ArrayDeque<>(MAX_POOLED_BUFFERS);
+
+    private BufferPool() {
+    }
+
+    /**
+     * Returns a buffer of {@link #BUFFER_SIZE} bytes, reusing a pooled one if there is one. Its
+     * contents are undefined.
+     *
+     * @return A buffer that should be given back with {@link #release(byte[])} when done
+     */
+    public static byte[] acquire() {
+        synchronized (sBuffers) {
+            byte[] buffer = sBuffers.pollFirst();
+            if (buffer != null) return buffer;
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Gives a buffer obtained from {@link #acquire()} back to the pool. The caller must not use
+     * it afterwards.
+     *
+     * @param buffer The buffer to give back
+     */
+    public static void release(byte[] buffer) {
+        if (buffer == null || buffer.length != BUFFER_SIZE) return;
+        synchronized (sBuffers) {
+            if (sBuffers.size() < MAX_POOLED_BUFFERS) {
+                sBuffers.offerFirst(buffer);
+            }
+        }
+    }
+}
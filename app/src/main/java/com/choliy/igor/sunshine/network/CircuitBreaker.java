@@ -0,0 +1,138 @@
+package com.choliy.igor.sunshine.network;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops requests to an endpoint that keeps failing. After a few failures in a row the breaker
+ * "opens", and for a cool-down period every request to the endpoint is refused without touching
+ * the network. Once the cool-down has passed, a single trial request is let through: if it
+ * succeeds the breaker closes again, if it fails the breaker opens for another cool-down.
+ */
+public final class CircuitBreaker {
+
+    private static final String TAG = CircuitBreaker.class.getSimpleName();
+
+    /* How many failures in a row open the breaker */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /* How long an open breaker refuses requests before it lets a trial request through */
+    public static final long DEFAULT_COOL_DOWN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<String, CircuitBreaker> sBreakers = new HashMap<>();
+
+    private final String mEndpoint;
+    private int mFailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long mCoolDownMillis = DEFAULT_COOL_DOWN_MILLIS;
+
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+    private boolean mOpen;
+    private boolean mTrialInFlight;
+
+    private CircuitBreaker(String endpoint) {
+        mEndpoint = endpoint;
+    }
+
+    /**
+     * Returns the breaker of the given endpoint, shared by everybody requesting it.
+     *
+     * @param endpoint Identifies the endpoint, e.g. the host of its URL
+     * @return The breaker for the endpoint
+     */
+    public static CircuitBreaker forEndpoint(String endpoint) {
+        synchronized (sBreakers) {
+            CircuitBreaker breaker = sBreakers.get(endpoint);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(endpoint);
+                sBreakers.put(endpoint, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * @param failureThreshold How many failures in a row open the breaker
+     */
+    public synchronized void setFailureThreshold(int failureThreshold) {
+        mFailureThreshold = failureThreshold;
+    }
+
+    /**
+     * @param coolDownMillis How long an open breaker refuses requests
+     */
+    public synchronized void setCoolDown(long coolDownMillis) {
+        mCoolDownMillis = coolDownMillis;
+    }
+
+    /**
+     * Asks whether a request to the endpoint may be sent now. Every request that is allowed must
+     * report its outcome with {@link #recordSuccess()}, {@link #recordFailure()} or
+     * {@link #recordCancelled()}.
+     *
+     * @return true if the request may be sent, false if the endpoint is cooling down
+     */
+    public synchronized boolean allowRequest() {
+        if (!mOpen) return true;
+
+        /* Only one trial request at a time, the others wait for its outcome */
+        if (mTrialInFlight || getRemainingCoolDownMillis() > 0) return false;
+
+        mTrialInFlight = true;
+        return true;
+    }
+
+    /**
+     * Reports that a request to the endpoint succeeded, which closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        if (mOpen) Log.i(TAG, "Closing the breaker of " + mEndpoint);
+        mConsecutiveFailures = 0;
+        mOpen = false;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Reports that a request to the endpoint failed. Enough failures in a row, or a failed trial
+     * request, open the breaker for another cool-down.
+     */
+    public synchronized void recordFailure() {
+        mConsecutiveFailures++;
+        if (mTrialInFlight || mConsecutiveFailures >= mFailureThreshold) {
+            Log.w(TAG, "Opening the breaker of " + mEndpoint + " after "
+                    + mConsecutiveFailures + " failures");
+            mOpen = true;
+            mOpenedAt = SystemClock.elapsedRealtime();
+        }
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Reports that an allowed request was cancelled before it had an outcome. It counts as
+     * neither a success nor a failure, but frees the way for the next trial request.
+     */
+    public synchronized void recordCancelled() {
+        mTrialInFlight = false;
+    }
+
+    /**
+     * @return How many requests to the endpoint failed since the last successful one
+     */
+    public synchronized int getConsecutiveFailures() {
+        return mConsecutiveFailures;
+    }
+
+    /**
+     * @return How long the endpoint keeps cooling down, or 0 if the breaker is closed or a trial
+     * request may be sent
+     */
+    public synchronized long getRemainingCoolDownMillis() {
+        if (!mOpen) return 0;
+        long elapsed = SystemClock.elapsedRealtime() - mOpenedAt;
+        return Math.max(0, mCoolDownMillis - elapsed);
+    }
+}
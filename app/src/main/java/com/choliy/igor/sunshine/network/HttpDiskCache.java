@@ -0,0 +1,408 @@
+package com.choliy.igor.sunshine.network;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.choliy.igor.sunshine.util.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small on-disk cache for the bodies of successful weather responses. A request for a URL that
+ * was fetched less than the freshness TTL ago is answered from disk without touching the
+ * network. The cache is bounded in size; when it grows too large, the least recently used
+ * entries are evicted first.
+ */
+public final class HttpDiskCache {
+
+    private static final String TAG = HttpDiskCache.class.getSimpleName();
+
+    /* How long a cached response is served without asking the server again */
+    public static final long DEFAULT_FRESHNESS_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /* A forecast is a few KB, so this holds the responses of many locations */
+    public static final long DEFAULT_MAX_SIZE_BYTES = 1024 * 1024;
+
+    private static final String CACHE_DIRECTORY = "http";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /*
+     * A temporary file nobody wrote to for this long was left behind by a download that never
+     * finished, e.g. because the process died. One in use is written to as its body is read. If a
+     * stalled download's file is deleted anyway, only committing that entry fails.
+     */
+    private static final long STALE_TEMP_FILE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /* Bumped whenever the layout of an entry file changes, older entries are then ignored */
+    private static final int ENTRY_VERSION = 1;
+
+    private static HttpDiskCache sInstance;
+
+    private final File mDirectory;
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private volatile long mFreshnessTtlMillis = DEFAULT_FRESHNESS_TTL_MILLIS;
+    private volatile long mMaxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+
+    private HttpDiskCache(File directory) {
+        mDirectory = directory;
+
+        Metrics.registerGauge("http.cache.hits", new Metrics.Gauge.Source() {
+            @Override
+            public long get() {
+                return mHitCount.get();
+            }
+        });
+        Metrics.registerGauge("http.cache.misses", new Metrics.Gauge.Source() {
+            @Override
+            public long get() {
+                return mMissCount.get();
+            }
+        });
+    }
+
+    /**
+     * Returns the process-wide cache, stored in the app's cache directory.
+     *
+     * @param context Used to find the cache directory
+     * @return The cache
+     */
+    public static synchronized HttpDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new HttpDiskCache(new File(context.getCacheDir(), CACHE_DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param freshnessTtlMillis How long a cached response is served without asking the server
+     *                           again. Zero disables serving from the cache.
+     */
+    public void setFreshnessTtl(long freshnessTtlMillis) {
+        mFreshnessTtlMillis = freshnessTtlMillis;
+    }
+
+    /**
+     * @param maxSizeBytes How many bytes the cache may take up on disk
+     */
+    public void setMaxSize(long maxSizeBytes) {
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * @return How many requests were answered from the cache
+     */
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * @return How many requests had to go to the network
+     */
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns the cached response for the given URL if there is one and it's still fresh. The
+     * entry then becomes the most recently used one.
+     *
+     * @param url The URL of the request
+     * @return A response whose body is read from disk, or null if the request has to go to the
+     * network
+     */
+    public synchronized HttpResponse get(URL url) {
+        File entryFile = getEntryFile(url);
+        if (!entryFile.exists()) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(entryFile), BufferPool.BUFFER_SIZE));
+
+            long now = System.currentTimeMillis();
+            boolean isValid = in.readInt() == ENTRY_VERSION && url.toString().equals(in.readUTF());
+            long storedAt = in.readLong();
+            if (!isValid || storedAt > now || now - storedAt >= mFreshnessTtlMillis) {
+                in.close();
+                mMissCount.incrementAndGet();
+                return null;
+            }
+
+            Charset charset = Charset.forName(in.readUTF());
+            String eTag = readOptionalString(in);
+            String lastModified = readOptionalString(in);
+
+            //noinspection ResultOfMethodCallIgnored
+            entryFile.setLastModified(now);
+            mHitCount.incrementAndGet();
+            return new HttpResponse(in, charset, eTag, lastModified);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Dropping unreadable cache entry: " + e.getMessage());
+            closeQuietly(in);
+            //noinspection ResultOfMethodCallIgnored
+            entryFile.delete();
+            mMissCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Starts caching the body of a network response. The body is copied into a temporary file
+     * while it's read, and only becomes a cache entry once {@link HttpResponse#complete()} is
+     * called.
+     *
+     * @param url      The URL of the request
+     * @param response A 200 OK response from the network whose body hasn't been read yet
+     */
+    public void put(URL url, HttpResponse response) {
+        if (mFreshnessTtlMillis <= 0) return;
+
+        File tempFile = new File(mDirectory, getKey(url) + TEMP_SUFFIX);
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Can't create " + mDirectory);
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile), BufferPool.BUFFER_SIZE));
+            out.writeInt(ENTRY_VERSION);
+            out.writeUTF(url.toString());
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(response.getCharset().name());
+            writeOptionalString(out, response.getETag());
+            writeOptionalString(out, response.getLastModified());
+
+            response.cacheBodyWith(new Writer(out, tempFile, getEntryFile(url)));
+        } catch (IOException e) {
+            Log.w(TAG, "Not caching " + url + ": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Deletes temporary files that were abandoned, then the least recently used entries until the
+     * cache fits into its maximum size.
+     */
+    private synchronized void trimToSize() {
+        File[] entryFiles = mDirectory.listFiles();
+        if (entryFiles == null) return;
+
+        long now = System.currentTimeMillis();
+        long size = 0;
+        for (File entryFile : entryFiles) {
+            if (entryFile.getName().endsWith(TEMP_SUFFIX)
+                    && now - entryFile.lastModified() >= STALE_TEMP_FILE_MILLIS
+                    && entryFile.delete()) {
+                continue;
+            }
+            size += entryFile.length();
+        }
+        if (size <= mMaxSizeBytes) return;
+
+        Arrays.sort(entryFiles, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long firstUsed = first.lastModified();
+                long secondUsed = second.lastModified();
+                return firstUsed < secondUsed ? -1 : (firstUsed == secondUsed ? 0 : 1);
+            }
+        });
+
+        for (File entryFile : entryFiles) {
+            if (size <= mMaxSizeBytes) break;
+            if (entryFile.getName().endsWith(TEMP_SUFFIX)) continue;
+
+            long length = entryFile.length();
+            if (entryFile.delete()) size -= length;
+        }
+    }
+
+    private synchronized void commit(File tempFile, File entryFile) throws IOException {
+        if (!tempFile.renameTo(entryFile)) {
+            throw new IOException("Can't rename " + tempFile + " to " + entryFile);
+        }
+    }
+
+    private File getEntryFile(URL url) {
+        return new File(mDirectory, getKey(url));
+    }
+
+    /**
+     * @return The hex MD5 of the URL, which is safe to use as a file name
+     */
+    private static String getKey(URL url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.toString().getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            /* Every platform has MD5 and UTF-8 */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            /* Nothing we can do about it */
+        }
+    }
+
+    /**
+     * Copies the body of one network response into a temporary file as the body is read, and
+     * turns the file into a cache entry once the body is known to be complete and valid.
+     */
+    final class Writer {
+
+        private final DataOutputStream mOut;
+        private final File mTempFile;
+        private final File mEntryFile;
+        private boolean mFailed;
+        private boolean mDone;
+
+        private Writer(DataOutputStream out, File tempFile, File entryFile) {
+            mOut = out;
+            mTempFile = tempFile;
+            mEntryFile = entryFile;
+        }
+
+        /**
+         * @return A stream that reads from the given body, copying everything it reads. Closing
+         * it reads whatever is left of the body first, unless the entry was aborted, so a parser
+         * that closes its input as soon as the JSON ends still leaves a complete copy behind.
+         */
+        InputStream tee(InputStream body) {
+            return new FilterInputStream(body) {
+
+                private boolean mClosed;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) write(new byte[]{(byte) b}, 0, 1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read > 0) write(buffer, offset, read);
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (mClosed) return;
+                    mClosed = true;
+                    try {
+                        if (!mDone && !mFailed) drain(this);
+                    } catch (IOException e) {
+                        mFailed = true;
+                    } finally {
+                        super.close();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Closes the given tee stream, which reads whatever is left of the body, and commits the
+         * cache entry.
+         */
+        void commit(InputStream teeBody) throws IOException {
+            teeBody.close();
+
+            if (mFailed || mDone) {
+                abort();
+                return;
+            }
+
+            mDone = true;
+            try {
+                mOut.close();
+                HttpDiskCache.this.commit(mTempFile, mEntryFile);
+            } catch (IOException e) {
+                Log.w(TAG, "Can't commit cache entry: " + e.getMessage());
+                //noinspection ResultOfMethodCallIgnored
+                mTempFile.delete();
+                return;
+            }
+            trimToSize();
+        }
+
+        /**
+         * Throws the temporary file away, unless the entry was already committed.
+         */
+        void abort() {
+            if (mDone) return;
+            mDone = true;
+            try {
+                mOut.close();
+            } catch (IOException ignored) {
+                /* The file is deleted anyway */
+            }
+            //noinspection ResultOfMethodCallIgnored
+            mTempFile.delete();
+        }
+
+        private void drain(InputStream teeBody) throws IOException {
+            byte[] buffer = BufferPool.acquire();
+            try {
+                //noinspection StatementWithEmptyBody
+                while (teeBody.read(buffer) != -1) {
+                    /* Everything read is copied by the tee stream */
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (mFailed || mDone) return;
+            try {
+                mOut.write(buffer, offset, count);
+            } catch (IOException e) {
+                /* Failing to cache must never fail the request itself */
+                Log.w(TAG, "Can't write cache entry: " + e.getMessage());
+                mFailed = true;
+            }
+        }
+    }
+}
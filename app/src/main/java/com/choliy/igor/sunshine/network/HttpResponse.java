@@ -0,0 +1,462 @@
+package com.choliy.igor.sunshine.network;
+
+import android.os.CancellationSignal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The response to an HTTP request made by {@link com.choliy.igor.sunshine.util.NetworkUtils},
+ * either fresh from the network or served from the {@link HttpDiskCache}. The body can either be
+ * streamed, decompressed and decoded with the charset the server declared, or read into a String
+ * in one go. The response must be closed once it has been read.
+ * <p>
+ * A network response also measures itself: how long it took to connect and then to receive the
+ * headers, and how many bytes of its body were read and how long that blocked.
+ */
+public final class HttpResponse implements Closeable {
+
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String CHARSET_PARAM = "charset=";
+
+    /* JSON is UTF-8 unless the server says otherwise */
+    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    /* Compressed JSON is typically 4 to 8 times smaller than the decompressed body */
+    private static final int GZIP_SIZE_FACTOR = 4;
+
+    /* Upper bound for pre-sizing the body buffer, in case the server sends a bogus length */
+    private static final int MAX_PRESIZED_BODY = 1024 * 1024;
+
+    /* How much of an unread body is drained to keep its connection alive */
+    private static final int MAX_DRAINED_BODY = 64 * 1024;
+
+    /* Null for responses served from the cache */
+    private final HttpURLConnection mConnection;
+    private final CancellationSignal mCancellationSignal;
+    private final int mCode;
+    private final long mContentLength;
+    private final boolean mGzipped;
+    private final Charset mCharset;
+    private final String mETag;
+    private final String mLastModified;
+    private InputStream mBody;
+
+    /* Timings of the request, in nanoseconds; 0 for responses served from the cache */
+    private final long mConnectNanos;
+    private final long mFirstByteNanos;
+
+    /* Set once the body of a network response is asked for */
+    private MeteredInputStream mMeteredBody;
+
+    /* Set when the body of a network response is being copied into the cache as it's read */
+    private HttpDiskCache.Writer mCacheWriter;
+
+    /**
+     * Sends the request of the given connection and reads the status line and headers of its
+     * response. The body is not read until it's asked for.
+     *
+     * @param connection A connection whose request is fully set up but not sent yet
+     * @throws IOException Related to network
+     */
+    public HttpResponse(HttpURLConnection connection) throws IOException {
+        this(connection, null);
+    }
+
+    /**
+     * Same as {@link #HttpResponse(HttpURLConnection)}, but the request can be aborted through
+     * the given signal for as long as the response is open. Cancelling tears the connection
+     * down, so whatever is blocked on it, be it waiting for the headers or reading the body,
+     * fails right away with an IOException instead of running into its timeout.
+     *
+     * @param connection         A connection whose request is fully set up but not sent yet
+     * @param cancellationSignal Aborts the request when cancelled, may be null
+     * @throws IOException Related to network, including when the request was cancelled
+     */
+    public HttpResponse(final HttpURLConnection connection, CancellationSignal cancellationSignal)
+            throws IOException {
+        mConnection = connection;
+        mCancellationSignal = cancellationSignal;
+
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    /*
+                     * Cancelling usually happens on the main thread, and closing a socket is I/O.
+                     * It gets a thread of its own rather than one of a pool, which may well be
+                     * busy with exactly the work this is supposed to abort.
+                     */
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            connection.disconnect();
+                        }
+                    }, "sunshine-http-cancel").start();
+                }
+            });
+        }
+
+        try {
+            /*
+             * Connecting explicitly first splits the time of the request into setting up the
+             * connection (nearly nothing for a pooled one) and waiting for the server's answer
+             */
+            long start = System.nanoTime();
+            connection.connect();
+            long connected = System.nanoTime();
+            mCode = connection.getResponseCode();
+            mConnectNanos = connected - start;
+            mFirstByteNanos = System.nanoTime() - connected;
+        } catch (IOException e) {
+            clearCancelListener();
+            connection.disconnect();
+            throw e;
+        }
+
+        mContentLength = parseContentLength(connection.getHeaderField("Content-Length"));
+        mGzipped = ENCODING_GZIP.equalsIgnoreCase(connection.getHeaderField(HEADER_CONTENT_ENCODING));
+        mCharset = parseCharset(connection.getContentType());
+        mETag = connection.getHeaderField(HEADER_ETAG);
+        mLastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+    }
+
+    /**
+     * Creates a 200 OK response for a body stored in the {@link HttpDiskCache}. The body is
+     * stored decompressed, with the charset and validators of the original response.
+     */
+    HttpResponse(InputStream cachedBody, Charset charset, String eTag, String lastModified) {
+        mConnection = null;
+        mCancellationSignal = null;
+        mCode = HttpURLConnection.HTTP_OK;
+        mContentLength = -1;
+        mGzipped = false;
+        mCharset = charset;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mBody = cachedBody;
+        mConnectNanos = 0;
+        mFirstByteNanos = 0;
+    }
+
+    /**
+     * Copies the body into the cache while it's being read. The cache entry is only committed by
+     * {@link #complete()}.
+     */
+    void cacheBodyWith(HttpDiskCache.Writer cacheWriter) {
+        mCacheWriter = cacheWriter;
+    }
+
+    /**
+     * @return true if this response was served from the {@link HttpDiskCache} rather than the
+     * network
+     */
+    public boolean isFromCache() {
+        return mConnection == null;
+    }
+
+    /**
+     * @return The HTTP status code of the response, e.g. 200
+     */
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return true if the server answered a conditional request with 304 Not Modified, meaning
+     * the data we already have is still current and there is no body to read
+     */
+    public boolean isNotModified() {
+        return mCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * @return The ETag validator of the response, or null if the server didn't send one
+     */
+    public String getETag() {
+        return mETag;
+    }
+
+    /**
+     * @return The Last-Modified validator of the response, or null if the server didn't send one
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return The charset the body is encoded with, UTF-8 if the server didn't declare one
+     */
+    public Charset getCharset() {
+        return mCharset;
+    }
+
+    /**
+     * @return The length of the body as sent over the network (so compressed, if it's gzipped),
+     * or -1 if the server didn't say
+     */
+    public long getContentLength() {
+        return mContentLength;
+    }
+
+    /**
+     * @return How long it took to set up the connection, in nanoseconds
+     */
+    public long getConnectNanos() {
+        return mConnectNanos;
+    }
+
+    /**
+     * @return How long it took from sending the request to receiving the status line and
+     * headers, in nanoseconds
+     */
+    public long getFirstByteNanos() {
+        return mFirstByteNanos;
+    }
+
+    /**
+     * @return How many bytes of the body were received from the network so far (so compressed,
+     * if it's gzipped), 0 for responses served from the cache
+     */
+    public long getBodyBytesRead() {
+        return mMeteredBody != null ? mMeteredBody.mBytesRead : 0;
+    }
+
+    /**
+     * @return How long reading the body from the network blocked so far, in nanoseconds. The
+     * time spent decompressing and decoding it is not included.
+     */
+    public long getBodyReadNanos() {
+        return mMeteredBody != null ? mMeteredBody.mReadNanos : 0;
+    }
+
+    /**
+     * Returns the body of the response as a stream of bytes, decompressed if the server gzipped
+     * it. Closing the response closes this stream as well.
+     *
+     * @return The body of the response
+     * @throws IOException Related to network, or if the server answered with an error status
+     */
+    public InputStream getBody() throws IOException {
+        if (mBody == null) {
+            mMeteredBody = new MeteredInputStream(mConnection.getInputStream());
+            InputStream body = mMeteredBody;
+            if (mGzipped) body = new GZIPInputStream(body, BufferPool.BUFFER_SIZE);
+            if (mCacheWriter != null) body = mCacheWriter.tee(body);
+            mBody = body;
+        }
+        return mBody;
+    }
+
+    /**
+     * Returns the body of the response decoded with the charset the server declared, ready to be
+     * handed to a streaming parser.
+     *
+     * @return The body of the response
+     * @throws IOException Related to network, or if the server answered with an error status
+     */
+    public Reader getBodyReader() throws IOException {
+        return new InputStreamReader(getBody(), mCharset);
+    }
+
+    /**
+     * Reads the whole body of the response into a String. The bytes are copied through a pooled
+     * buffer into a single array sized up front from the Content-Length header.
+     *
+     * @return The contents of the HTTP response, or null if the body is empty
+     * @throws IOException Related to network, or if the server answered with an error status
+     */
+    public String readBodyAsString() throws IOException {
+        InputStream body = getBody();
+
+        int expectedLength = BufferPool.BUFFER_SIZE;
+        if (mContentLength > 0) {
+            long hint = mGzipped ? mContentLength * GZIP_SIZE_FACTOR : mContentLength;
+            expectedLength = (int) Math.min(hint, MAX_PRESIZED_BODY);
+        }
+
+        BodyBuffer bodyBuffer = new BodyBuffer(expectedLength);
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                bodyBuffer.write(buffer, 0, read);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+
+        if (bodyBuffer.size() == 0) return null;
+        return bodyBuffer.decode(mCharset);
+    }
+
+    /**
+     * Tells the response that its body was read and turned out to be valid. If the body is being
+     * copied into the cache, the cache entry is committed now; responses that are closed without
+     * being completed are never cached.
+     *
+     * @throws IOException If the rest of the body can't be read
+     */
+    public void complete() throws IOException {
+        if (mCacheWriter != null) {
+            mCacheWriter.commit(getBody());
+            mCacheWriter = null;
+        }
+    }
+
+    /**
+     * Closes the body stream and releases the connection. A body that hasn't been read to the
+     * end is drained first, as long as what's left is small, so the connection goes back into the
+     * platform's keep-alive pool and the next request to the same host can reuse it. Only if
+     * that's not possible is the connection torn down.
+     */
+    @Override
+    public void close() {
+        clearCancelListener();
+
+        if (mCacheWriter != null) {
+            mCacheWriter.abort();
+            mCacheWriter = null;
+        }
+
+        boolean reusable = false;
+        try {
+            /* A cancelled request may have been cut off halfway, never reuse its connection */
+            if (mCancellationSignal != null && mCancellationSignal.isCanceled()) {
+                throw new IOException("Request was cancelled");
+            }
+
+            InputStream body = mBody;
+            if (body == null && mConnection != null) {
+                body = mCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getErrorStream()
+                        : mConnection.getInputStream();
+            }
+            if (body != null) {
+                reusable = mConnection != null && drain(body);
+                body.close();
+            } else {
+                /* Bodiless responses such as 304 leave the connection ready for the next one */
+                reusable = true;
+            }
+        } catch (IOException ignored) {
+            /* The connection is in an unknown state, don't let anybody reuse it */
+        } finally {
+            if (mConnection != null && !reusable) mConnection.disconnect();
+        }
+    }
+
+    /**
+     * Reads what's left of the body, but gives up if there is more than is worth downloading
+     * just to keep the connection.
+     *
+     * @return true if the body was read to its end
+     */
+    private static boolean drain(InputStream body) throws IOException {
+        byte[] buffer = BufferPool.acquire();
+        try {
+            long drained = 0;
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAINED_BODY) return false;
+            }
+            return true;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private void clearCancelListener() {
+        if (mCancellationSignal != null) mCancellationSignal.setOnCancelListener(null);
+    }
+
+    private static long parseContentLength(String contentLength) {
+        if (contentLength == null) return -1;
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Extracts the charset parameter out of a Content-Type header value such as
+     * "application/json; charset=utf-8".
+     */
+    private static Charset parseCharset(String contentType) {
+        if (contentType == null) return DEFAULT_CHARSET;
+
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+            if (param.regionMatches(true, 0, CHARSET_PARAM, 0, CHARSET_PARAM.length())) {
+                String charsetName = param.substring(CHARSET_PARAM.length()).replace("\"", "");
+                try {
+                    return Charset.forName(charsetName);
+                } catch (IllegalArgumentException e) {
+                    /* Unknown or illegal charset name, fall back to the default */
+                    return DEFAULT_CHARSET;
+                }
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    /**
+     * Counts the bytes read from the stream it wraps, and the time spent blocked reading them.
+     * The response is only ever read by one thread at a time.
+     */
+    private static final class MeteredInputStream extends FilterInputStream {
+
+        long mBytesRead;
+        long mReadNanos;
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int read = super.read();
+            mReadNanos += System.nanoTime() - start;
+            if (read != -1) mBytesRead++;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, count);
+            mReadNanos += System.nanoTime() - start;
+            if (read > 0) mBytesRead += read;
+            return read;
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream that decodes its contents in place, rather than copying them into
+     * a new array first as toByteArray() does.
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        String decode(Charset charset) {
+            return new String(buf, 0, count, charset);
+        }
+    }
+}
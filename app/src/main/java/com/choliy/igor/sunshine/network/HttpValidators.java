@@ -0,0 +1,90 @@
+package com.choliy.igor.sunshine.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Remembers the ETag and Last-Modified validators of the last response we stored for each
+ * request URL, and turns later requests for the same URL into conditional ones. When the data on
+ * the server hasn't changed, it then answers with an empty 304 Not Modified instead of the whole
+ * forecast.
+ */
+public final class HttpValidators {
+
+    /* Validators are kept apart from the user's preferences, in their own file */
+    private static final String PREFS_NAME = "http_validators";
+
+    private static final String KEY_ETAG_SUFFIX = "|etag";
+    private static final String KEY_LAST_MODIFIED_SUFFIX = "|last_modified";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private HttpValidators() {
+    }
+
+    /**
+     * Adds the validators saved for the URL of the given connection to its request, if there
+     * are any.
+     *
+     * @param context    Used to access the validators
+     * @param connection A connection whose request is not sent yet
+     */
+    public static void applyTo(Context context, HttpURLConnection connection) {
+        SharedPreferences sp = getPreferences(context);
+        String url = connection.getURL().toString();
+
+        String eTag = sp.getString(url + KEY_ETAG_SUFFIX, null);
+        if (eTag != null) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+        }
+
+        String lastModified = sp.getString(url + KEY_LAST_MODIFIED_SUFFIX, null);
+        if (lastModified != null) {
+            connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Saves the validators of a response. Only call this once the data of the response has been
+     * stored, otherwise a later 304 would leave us without it.
+     *
+     * @param context  Used to access the validators
+     * @param url      The URL the response was fetched from
+     * @param response The response to save the validators of
+     */
+    public static void save(Context context, URL url, HttpResponse response) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        putOrRemove(editor, url + KEY_ETAG_SUFFIX, response.getETag());
+        putOrRemove(editor, url + KEY_LAST_MODIFIED_SUFFIX, response.getLastModified());
+        editor.apply();
+    }
+
+    /**
+     * Forgets the validators saved for a URL, so the next request for it fetches the whole data.
+     *
+     * @param context Used to access the validators
+     * @param url     The URL to forget the validators of
+     */
+    public static void clear(Context context, URL url) {
+        getPreferences(context).edit()
+                .remove(url + KEY_ETAG_SUFFIX)
+                .remove(url + KEY_LAST_MODIFIED_SUFFIX)
+                .apply();
+    }
+
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, String value) {
+        if (value != null) {
+            editor.putString(key, value);
+        } else {
+            editor.remove(key);
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,151 @@
+package com.choliy.igor.sunshine.network;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import com.choliy.igor.sunshine.util.Metrics;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The one HTTP client all weather requests go through. It makes sure that every connection has
+ * timeouts, so a slow server can't hold the sync thread forever, and that all HTTPS connections
+ * share one SSL socket factory, so its session cache lets later requests resume the TLS session
+ * of an earlier one instead of doing a full handshake. Connections are kept alive and pooled by
+ * the platform as long as responses are released with {@link HttpResponse#close()}, which reads
+ * the body to the end rather than disconnecting.
+ * <p>
+ * The client reports to {@link Metrics} how long requests take, from sending the request to
+ * having the status line and headers of the response, along with the connect and
+ * time-to-first-byte parts of that.
+ */
+public final class WeatherHttpClient {
+
+    private static final String TAG = WeatherHttpClient.class.getSimpleName();
+
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+    private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(20);
+
+    /* How many TLS sessions to remember, one per weather host is plenty */
+    private static final int SSL_SESSION_CACHE_SIZE = 8;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    private static WeatherHttpClient sInstance;
+
+    private final SSLSocketFactory mSslSocketFactory;
+
+    private WeatherHttpClient(SSLSocketFactory sslSocketFactory) {
+        mSslSocketFactory = sslSocketFactory;
+    }
+
+    /**
+     * @return The process-wide client
+     */
+    public static synchronized WeatherHttpClient getInstance() {
+        if (sInstance == null) {
+            sInstance = new WeatherHttpClient(createSslSocketFactory());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Opens a connection to the given URL, with the client's timeouts and SSL socket factory and
+     * asking for a gzipped response. The request is not sent yet, so more headers can be added
+     * before handing the connection to {@link #execute(HttpURLConnection)}.
+     *
+     * @param url The URL to request
+     * @return A connection whose request is not sent yet
+     * @throws IOException Related to network
+     */
+    public HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+
+        if (connection instanceof HttpsURLConnection && mSslSocketFactory != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(mSslSocketFactory);
+        }
+        return connection;
+    }
+
+    /**
+     * Sends the request of the given connection and waits for the status line and headers of its
+     * response.
+     *
+     * @param connection A connection obtained from {@link #open(URL)}
+     * @return The response, ready for its body to be read
+     * @throws IOException Related to network, including timeouts
+     */
+    public HttpResponse execute(HttpURLConnection connection) throws IOException {
+        return execute(connection, null);
+    }
+
+    /**
+     * Same as {@link #execute(HttpURLConnection)}, but the request is aborted as soon as the
+     * given signal is cancelled, until the response is closed.
+     *
+     * @param connection         A connection obtained from {@link #open(URL)}
+     * @param cancellationSignal Aborts the request when cancelled, may be null
+     * @return The response, ready for its body to be read
+     * @throws IOException                Related to network, including timeouts and aborts
+     * @throws OperationCanceledException If the signal was cancelled before the request was sent
+     */
+    public HttpResponse execute(HttpURLConnection connection,
+                                CancellationSignal cancellationSignal) throws IOException {
+        if (cancellationSignal != null) cancellationSignal.throwIfCanceled();
+
+        long start = System.nanoTime();
+        try {
+            HttpResponse response = new HttpResponse(connection, cancellationSignal);
+            recordLatency(connection.getURL(), start);
+            Metrics.histogram("http.connect_us").record(response.getConnectNanos() / 1000);
+            Metrics.histogram("http.ttfb_us").record(response.getFirstByteNanos() / 1000);
+            return response;
+        } catch (IOException e) {
+            Metrics.counter("http.failures").increment();
+            recordLatency(connection.getURL(), start);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the time from sending a request to receiving its headers, or to failing, in the
+     * http.latency_us histogram.
+     */
+    private static void recordLatency(URL url, long startNanos) {
+        Metrics.counter("http.requests").increment();
+        long end = Metrics.recordSince("http.latency_us", startNanos);
+        Log.d(TAG, "Request to " + url.getHost() + " took "
+                + TimeUnit.NANOSECONDS.toMillis(end - startNanos) + " ms");
+    }
+
+    /**
+     * Creates the SSL socket factory shared by all HTTPS connections. Its SSL context keeps a
+     * cache of client sessions, which is what lets a connection resume an earlier TLS session.
+     *
+     * @return The factory, or null to fall back to the platform's default one
+     */
+    private static SSLSocketFactory createSslSocketFactory() {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            sslContext.getClientSessionContext().setSessionCacheSize(SSL_SESSION_CACHE_SIZE);
+            return sslContext.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            Log.w(TAG, "Using the default SSL socket factory: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package com.choliy.igor.sunshine.sync;
 
-import android.content.Context;
-import android.os.AsyncTask;
-
+import com.choliy.igor.sunshine.util.AppExecutors;
+import com.choliy.igor.sunshine.util.SyncUtils;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
@@ -10,7 +9,7 @@ import com.firebase.jobdispatcher.RetryStrategy;
 
 public class FirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    private SyncCoordinator.Handle mSyncHandle;
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -25,22 +24,32 @@ public class FirebaseJobService extends JobService {
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>() {
+        /*
+         * If a sync for the same location is already running, the job just waits for it.
+         * Nobody is looking at a scheduled sync, so it yields to user visible work.
+         */
+        mSyncHandle = SyncCoordinator.requestSync(this, AppExecutors.Priority.BACKGROUND);
 
-            @Override
-            protected Void doInBackground(Void... voids) {
-                Context context = getApplicationContext();
-                SyncTask.syncWeather(context);
-                return null;
-            }
+        /* The result arrives on the main thread, no thread is blocked waiting for it */
+        mSyncHandle.setCallback(new SyncCoordinator.Callback() {
 
             @Override
-            protected void onPostExecute(Void aVoid) {
+            public void onSyncFinished(SyncTask.Result result) {
+                /* The job was stopped, onStopJob already decided about the retry */
+                if (result == SyncTask.Result.CANCELLED) return;
+
+                /*
+                 * A transient failure is retried instead of waiting for the next sync window,
+                 * but with a randomized delay rather than the dispatcher's exponential backoff,
+                 * so devices that failed together don't all come back together.
+                 */
+                if (result == SyncTask.Result.RETRY) {
+                    SyncUtils.scheduleRetrySync(FirebaseJobService.this);
+                }
                 jobFinished(jobParameters, false);
             }
-        };
+        });
 
-        mFetchWeatherTask.execute();
         return true;
     }
 
@@ -54,8 +63,9 @@ public class FirebaseJobService extends JobService {
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
+        /* Stops the sync, unless somebody else still needs its result */
+        if (mSyncHandle != null) {
+            mSyncHandle.cancel();
         }
         return true;
     }
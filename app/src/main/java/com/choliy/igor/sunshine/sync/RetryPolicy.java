@@ -0,0 +1,68 @@
+package com.choliy.igor.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long to wait before retrying a sync that failed for a transient reason. The delay
+ * doubles with every failed attempt in a row, up to a maximum, and is spread randomly over the
+ * whole range below it ("full jitter"), so that many devices that failed at the same moment don't
+ * all come back to the server at the same moment either.
+ * <p>
+ * The attempts are counted in SharedPreferences, since every retry may run in a new process.
+ */
+public final class RetryPolicy {
+
+    /* The job dispatcher doesn't accept a backoff shorter than 30 seconds */
+    public static final int INITIAL_BACKOFF_SECONDS = 30;
+    public static final int MAX_BACKOFF_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    /* After this many retries in a row we give up and leave it to the periodic sync */
+    public static final int MAX_ATTEMPTS = 8;
+
+    private static final String PREFS_NAME = "sync_retry";
+    private static final String KEY_ATTEMPT = "attempt";
+
+    private static final Random sRandom = new Random();
+
+    private RetryPolicy() {
+    }
+
+    /**
+     * Counts another failed attempt and returns how long to wait before the next one.
+     *
+     * @param context Used to access the attempt count
+     * @return The delay before the next attempt in seconds, or -1 if we should stop retrying
+     */
+    public static synchronized int nextBackoffSeconds(Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        int attempt = preferences.getInt(KEY_ATTEMPT, 0);
+        if (attempt >= MAX_ATTEMPTS) return -1;
+
+        long ceiling = Math.min((long) INITIAL_BACKOFF_SECONDS << attempt, MAX_BACKOFF_SECONDS);
+        preferences.edit().putInt(KEY_ATTEMPT, attempt + 1).apply();
+
+        /* Never go below the dispatcher's minimum, but spread everything above it */
+        return INITIAL_BACKOFF_SECONDS
+                + sRandom.nextInt((int) ceiling - INITIAL_BACKOFF_SECONDS + 1);
+    }
+
+    /**
+     * Starts counting attempts from scratch, called after a sync succeeded.
+     *
+     * @param context Used to access the attempt count
+     */
+    public static synchronized void reset(Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        if (preferences.getInt(KEY_ATTEMPT, 0) != 0) {
+            preferences.edit().remove(KEY_ATTEMPT).apply();
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
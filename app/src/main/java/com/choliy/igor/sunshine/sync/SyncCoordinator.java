@@ -0,0 +1,258 @@
+package com.choliy.igor.sunshine.sync;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.choliy.igor.sunshine.util.AppExecutors;
+import com.choliy.igor.sunshine.util.PreferencesUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes sure that only one sync per location runs at a time. The periodic job, the startup sync
+ * and a location change in the settings can all ask for a sync within moments of each other;
+ * whoever asks while an equivalent sync is already running simply attaches to it and gets its
+ * result, instead of going through another network round-trip.
+ * <p>
+ * Every caller gets its own {@link Handle}. A sync is only cancelled once every caller attached
+ * to it has cancelled its handle.
+ */
+public final class SyncCoordinator {
+
+    private static final String TAG = SyncCoordinator.class.getSimpleName();
+
+    /* The syncs that are queued or running, by location setting */
+    private static final Map<String, Flight> sFlights = new HashMap<>();
+
+    private SyncCoordinator() {
+    }
+
+    /**
+     * Starts a sync of the preferred location, or attaches to the one that is already in flight
+     * for it.
+     *
+     * @param context  Used to read the preferred location and to run the sync
+     * @param priority The lane of the sync pool a new sync is queued in
+     * @return A handle to await the result of the sync with, or to cancel it
+     */
+    public static Handle requestSync(Context context, AppExecutors.Priority priority) {
+        final Context appContext = context.getApplicationContext();
+        String locationSetting = PreferencesUtils.getPreferredWeatherLocation(appContext);
+
+        synchronized (sFlights) {
+            Flight flight = sFlights.get(locationSetting);
+            if (flight == null) {
+                final CancellationSignal cancellationSignal = new CancellationSignal();
+                flight = new Flight(locationSetting, cancellationSignal,
+                        new Callable<SyncTask.Result>() {
+                            @Override
+                            public SyncTask.Result call() {
+                                return SyncTask.syncWeather(appContext, cancellationSignal);
+                            }
+                        });
+                sFlights.put(locationSetting, flight);
+                AppExecutors.sync().execute(priority, flight);
+            } else {
+                Log.d(TAG, "Joining the sync in flight for " + locationSetting);
+            }
+
+            Handle handle = new Handle(flight);
+            flight.mHandles.add(handle);
+            return handle;
+        }
+    }
+
+    /**
+     * One sync, shared by every caller that asked for it while it was queued or running.
+     */
+    private static final class Flight extends FutureTask<SyncTask.Result> {
+
+        private final String mLocationSetting;
+        private final CancellationSignal mCancellationSignal;
+
+        /* The handles that haven't been cancelled, guarded by sFlights */
+        private final List<Handle> mHandles = new ArrayList<>();
+
+        Flight(String locationSetting, CancellationSignal cancellationSignal,
+               Callable<SyncTask.Result> sync) {
+            super(sync);
+            mLocationSetting = locationSetting;
+            mCancellationSignal = cancellationSignal;
+        }
+
+        @Override
+        protected void done() {
+            /* Whoever asks from now on needs a sync of their own */
+            synchronized (sFlights) {
+                if (sFlights.get(mLocationSetting) == this) sFlights.remove(mLocationSetting);
+                for (Handle handle : mHandles) {
+                    handle.wakeUp();
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the result of a sync without blocking a thread to wait for it.
+     */
+    public interface Callback {
+
+        /**
+         * Called on the main thread once the sync finished or the handle was cancelled.
+         *
+         * @param result How the sync ended, {@link SyncTask.Result#CANCELLED} if the sync or the
+         *               handle was cancelled
+         */
+        void onSyncFinished(SyncTask.Result result);
+    }
+
+    /**
+     * A caller's share in a sync.
+     */
+    public static final class Handle {
+
+        private final Flight mFlight;
+
+        /* Written under sFlights */
+        private volatile boolean mCancelled;
+
+        /* Guarded by sFlights */
+        private Callback mCallback;
+
+        private Handle(Flight flight) {
+            mFlight = flight;
+        }
+
+        /**
+         * Waits for the sync to finish, or for this handle to be cancelled. Must not be called on
+         * the main thread.
+         *
+         * @return How the sync ended, {@link SyncTask.Result#CANCELLED} if the sync or this
+         * handle was cancelled
+         * @throws InterruptedException If the waiting thread is interrupted
+         */
+        public SyncTask.Result await() throws InterruptedException {
+            synchronized (this) {
+                while (!mCancelled && !mFlight.isDone()) {
+                    wait();
+                }
+            }
+            return getResult();
+        }
+
+        /**
+         * Waits for the sync to finish, or for this handle to be cancelled, but no longer than
+         * the given time.
+         *
+         * @return How the sync ended, {@link SyncTask.Result#CANCELLED} if the sync or this
+         * handle was cancelled
+         * @throws InterruptedException If the waiting thread is interrupted
+         * @throws TimeoutException     If the sync didn't finish in time
+         */
+        public SyncTask.Result await(long timeout, TimeUnit unit)
+                throws InterruptedException, TimeoutException {
+            long deadline = SystemClock.elapsedRealtime() + unit.toMillis(timeout);
+            synchronized (this) {
+                while (!mCancelled && !mFlight.isDone()) {
+                    long remaining = deadline - SystemClock.elapsedRealtime();
+                    if (remaining <= 0) throw new TimeoutException();
+                    wait(remaining);
+                }
+            }
+            return getResult();
+        }
+
+        /**
+         * Has the result delivered to the given callback instead of waiting for it. This is what
+         * callers on the main thread should use, as well as callers on a pool thread, which
+         * shouldn't be held for the length of a sync.
+         *
+         * @param callback Called once, on the main thread
+         */
+        public void setCallback(Callback callback) {
+            synchronized (sFlights) {
+                mCallback = callback;
+                if (mCancelled || mFlight.isDone()) wakeUp();
+            }
+        }
+
+        /**
+         * @return true once the sync has finished, one way or another
+         */
+        public boolean isDone() {
+            return mFlight.isDone();
+        }
+
+        /**
+         * Tells the coordinator this caller is no longer interested in the result, which wakes up
+         * whoever is waiting on this handle. The sync itself is only cancelled once nobody is
+         * waiting for it anymore.
+         */
+        public void cancel() {
+            synchronized (sFlights) {
+                if (mCancelled) return;
+                mCancelled = true;
+                wakeUp();
+
+                mFlight.mHandles.remove(this);
+                if (mFlight.mHandles.isEmpty() && !mFlight.isDone()) {
+                    Log.d(TAG, "Cancelling the sync for " + mFlight.mLocationSetting);
+
+                    /*
+                     * The signal stops the network, parsing and notification stages; the
+                     * interrupt stops the provider from committing a half written forecast.
+                     */
+                    mFlight.mCancellationSignal.cancel();
+                    mFlight.cancel(true);
+                }
+            }
+        }
+
+        /* Called under sFlights once the sync finished or this handle was cancelled */
+        private void wakeUp() {
+            synchronized (this) {
+                notifyAll();
+            }
+
+            final Callback callback = mCallback;
+            if (callback == null) return;
+            mCallback = null;
+
+            AppExecutors.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    SyncTask.Result result;
+                    try {
+                        result = getResult();
+                    } catch (InterruptedException e) {
+                        result = SyncTask.Result.CANCELLED;
+                    }
+                    callback.onSyncFinished(result);
+                }
+            });
+        }
+
+        private SyncTask.Result getResult() throws InterruptedException {
+            if (mCancelled) return SyncTask.Result.CANCELLED;
+            try {
+                return mFlight.get();
+            } catch (CancellationException e) {
+                return SyncTask.Result.CANCELLED;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Sync crashed: " + e.getCause());
+                return SyncTask.Result.FAILED;
+            }
+        }
+    }
+}
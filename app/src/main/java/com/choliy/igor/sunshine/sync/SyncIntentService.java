@@ -3,6 +3,9 @@ package com.choliy.igor.sunshine.sync;
 import android.app.IntentService;
 import android.content.Intent;
 
+import com.choliy.igor.sunshine.util.AppExecutors;
+import com.choliy.igor.sunshine.util.SyncUtils;
+
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
  * a service on a separate handler thread.
@@ -15,6 +18,20 @@ public class SyncIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        SyncTask.syncWeather(this);
+        /*
+         * If a sync for the same location is already running, there is no need for another.
+         * Immediate syncs are asked for by the user, so they go ahead of scheduled work.
+         */
+        SyncTask.Result result;
+        try {
+            result = SyncCoordinator.requestSync(this, AppExecutors.Priority.USER_VISIBLE).await();
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        /* There is nobody to retry an immediate sync, so hand it over to the job dispatcher */
+        if (result == SyncTask.Result.RETRY) {
+            SyncUtils.scheduleRetrySync(this);
+        }
     }
 }
\ No newline at end of file
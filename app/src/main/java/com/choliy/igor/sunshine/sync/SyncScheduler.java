@@ -0,0 +1,183 @@
+package com.choliy.igor.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.choliy.igor.sunshine.util.SyncUtils;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts when Sunshine syncs to how the forecast and the user actually behave, instead of always
+ * syncing every 3 to 4 hours.
+ * <p>
+ * The interval of the periodic sync grows while consecutive syncs keep bringing back the same
+ * forecast, and shrinks while the forecast keeps changing. On top of that, the scheduler learns
+ * at which hours of the day the app is usually opened, and pre-fetches the forecast shortly
+ * before the next of those hours, so it's fresh when the user looks at it.
+ */
+public final class SyncScheduler {
+
+    private static final String TAG = SyncScheduler.class.getSimpleName();
+
+    /* Bounds and starting point of the periodic sync interval */
+    public static final int DEFAULT_SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(3);
+    private static final int MIN_SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+    private static final int MAX_SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(12);
+
+    /* How the interval changes after a sync that found the forecast unchanged or volatile */
+    private static final float STABLE_GROWTH_FACTOR = 1.5f;
+    private static final float VOLATILE_SHRINK_FACTOR = 0.5f;
+
+    /* A sync that changed at least this many days of the forecast counts as volatile */
+    private static final int VOLATILE_ROWS_CHANGED = 3;
+
+    /* Older app opens count less, so the histogram follows changes in the user's routine */
+    private static final float OPEN_HOUR_DECAY = 0.95f;
+
+    /* An hour is habitual once it has this much weight, and this share of all the weight */
+    private static final float HABIT_MIN_WEIGHT = 3f;
+    private static final float HABIT_MIN_SHARE = 0.1f;
+
+    /* How long before a habitual hour the forecast is pre-fetched */
+    private static final long PREFETCH_LEAD_MILLIS = TimeUnit.MINUTES.toMillis(20);
+
+    private static final int HOURS_PER_DAY = 24;
+
+    /* Scheduling state is kept apart from the user's preferences, in its own file */
+    private static final String PREFS_NAME = "sync_schedule";
+    private static final String KEY_SYNC_INTERVAL = "sync_interval_seconds";
+    private static final String KEY_OPEN_HOUR_PREFIX = "open_hour_";
+
+    /* Off while a load test hammers a fake server, whose forecasts say nothing about the user's */
+    private static volatile boolean sEnabled = true;
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Turns adapting the schedule to syncs and app opens on or off. While it's off, neither the
+     * scheduling state nor the scheduled jobs change.
+     *
+     * @param enabled false to ignore syncs and app opens until it's turned on again
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * @param context Used to access the scheduling state
+     * @return The interval the periodic sync should run at right now, in seconds
+     */
+    public static int getSyncIntervalSeconds(Context context) {
+        return getPreferences(context).getInt(KEY_SYNC_INTERVAL, DEFAULT_SYNC_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Adapts the schedule to the outcome of a sync that reached the server. The periodic sync is
+     * only rescheduled if its interval actually changes.
+     *
+     * @param context     Used to access the scheduling state and the job dispatcher
+     * @param rowsChanged How many days of the forecast the sync changed, 0 if the server said it
+     *                    hadn't changed
+     */
+    public static synchronized void onSyncCompleted(Context context, int rowsChanged) {
+        if (!sEnabled) return;
+
+        int interval = getSyncIntervalSeconds(context);
+        int newInterval;
+
+        if (rowsChanged == 0) {
+            newInterval = (int) Math.min(
+                    interval * STABLE_GROWTH_FACTOR, MAX_SYNC_INTERVAL_SECONDS);
+        } else if (rowsChanged >= VOLATILE_ROWS_CHANGED) {
+            newInterval = (int) Math.max(
+                    interval * VOLATILE_SHRINK_FACTOR, MIN_SYNC_INTERVAL_SECONDS);
+        } else {
+            /* A few days changed, which is what the default interval is tuned for */
+            newInterval = interval;
+        }
+
+        if (newInterval != interval) {
+            Log.d(TAG, "Sync interval " + interval + " s -> " + newInterval + " s");
+            getPreferences(context).edit().putInt(KEY_SYNC_INTERVAL, newInterval).apply();
+            SyncUtils.scheduleFirebaseJobDispatcherSync(context, newInterval);
+        }
+
+        schedulePrefetch(context);
+    }
+
+    /**
+     * Records that the user opened the app now, and pre-fetches before the next habitual hour.
+     *
+     * @param context Used to access the scheduling state and the job dispatcher
+     */
+    public static synchronized void onAppOpened(Context context) {
+        if (!sEnabled) return;
+
+        SharedPreferences sp = getPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+
+        int openHour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+            float weight = sp.getFloat(KEY_OPEN_HOUR_PREFIX + hour, 0f) * OPEN_HOUR_DECAY;
+            if (hour == openHour) weight += 1f;
+            editor.putFloat(KEY_OPEN_HOUR_PREFIX + hour, weight);
+        }
+        editor.apply();
+
+        schedulePrefetch(context);
+    }
+
+    /**
+     * Schedules a one-off sync shortly before the next hour at which the user usually opens the
+     * app, if there is one within the next day.
+     */
+    private static void schedulePrefetch(Context context) {
+        long now = System.currentTimeMillis();
+        long nextOpen = getNextHabitualOpenTime(context, now);
+        if (nextOpen < 0) return;
+
+        long delayMillis = nextOpen - PREFETCH_LEAD_MILLIS - now;
+        SyncUtils.schedulePrefetchSync(context, (int) TimeUnit.MILLISECONDS.toSeconds(delayMillis));
+    }
+
+    /**
+     * @return The start of the next habitual hour that is far enough away to pre-fetch before
+     * it, or -1 if the user has no habits yet
+     */
+    private static long getNextHabitualOpenTime(Context context, long now) {
+        SharedPreferences sp = getPreferences(context);
+
+        float[] weights = new float[HOURS_PER_DAY];
+        float totalWeight = 0f;
+        for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+            weights[hour] = sp.getFloat(KEY_OPEN_HOUR_PREFIX + hour, 0f);
+            totalWeight += weights[hour];
+        }
+        if (totalWeight == 0f) return -1;
+
+        Calendar candidate = Calendar.getInstance();
+        candidate.setTimeInMillis(now);
+        candidate.set(Calendar.MINUTE, 0);
+        candidate.set(Calendar.SECOND, 0);
+        candidate.set(Calendar.MILLISECOND, 0);
+
+        for (int i = 0; i <= HOURS_PER_DAY; i++) {
+            candidate.add(Calendar.HOUR_OF_DAY, 1);
+            if (candidate.getTimeInMillis() - PREFETCH_LEAD_MILLIS <= now) continue;
+
+            float weight = weights[candidate.get(Calendar.HOUR_OF_DAY)];
+            if (weight >= HABIT_MIN_WEIGHT && weight >= totalWeight * HABIT_MIN_SHARE) {
+                return candidate.getTimeInMillis();
+            }
+        }
+        return -1;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -3,98 +3,359 @@ package com.choliy.igor.sunshine.sync;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.text.format.DateUtils;
 import android.util.Log;
 
+import com.choliy.igor.sunshine.BuildConfig;
+import com.choliy.igor.sunshine.ForecastSnapshot;
+import com.choliy.igor.sunshine.core.ForecastBatch;
 import com.choliy.igor.sunshine.data.WeatherContract;
+import com.choliy.igor.sunshine.network.CircuitBreaker;
+import com.choliy.igor.sunshine.network.HttpResponse;
+import com.choliy.igor.sunshine.network.HttpValidators;
 import com.choliy.igor.sunshine.util.JsonUtils;
+import com.choliy.igor.sunshine.util.Metrics;
 import com.choliy.igor.sunshine.util.NetworkUtils;
 import com.choliy.igor.sunshine.util.NotificationUtils;
 import com.choliy.igor.sunshine.util.PreferencesUtils;
+import com.choliy.igor.sunshine.util.TraceUtils;
+import com.google.gson.stream.MalformedJsonException;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Locale;
 
 public class SyncTask {
 
     private static final String TAG = SyncTask.class.getSimpleName();
 
+    /* The server asks us to slow down */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * How a sync ended, which tells the caller whether it's worth trying again.
+     */
+    public enum Result {
+        /* A new forecast was fetched and stored */
+        SUCCESS,
+        /* The stored forecast is still current, nothing was written */
+        NOT_MODIFIED,
+        /* The server couldn't be reached or is having trouble, try again later */
+        RETRY,
+        /* Something is wrong that trying again won't fix, e.g. an invalid response */
+        FAILED,
+        /* The sync was cancelled and stopped early, nothing was written */
+        CANCELLED
+    }
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
+     * <p>
+     * Requests to a weather server that keeps failing are held back by its
+     * {@link CircuitBreaker} for a while, and reported as {@link Result#RETRY} right away.
+     * <p>
+     * Every stage of the sync honors the cancellation signal: cancelling aborts the download,
+     * stops the parse, rolls back a forecast that's half written (the provider also stops when
+     * the sync thread is interrupted) and skips the notification.
+     * <p>
+     * How long each stage takes, how many bytes were downloaded and how many days of the
+     * forecast changed is recorded in {@link Metrics}, under names starting with "sync.".
+     * <p>
+     * The app's syncs go through the {@link SyncCoordinator}, which runs them one at a time on
+     * {@link com.choliy.igor.sunshine.util.AppExecutors#sync()}. The method is still synchronized
+     * for direct callers such as the debug load harness, so they never interleave with a sync.
      *
-     * @param context Used to access utility methods and the ContentResolver
+     * @param context            Used to access utility methods and the ContentResolver
+     * @param cancellationSignal Stops the sync early when cancelled
+     * @return How the sync ended
      */
-    synchronized public static void syncWeather(Context context) {
+    synchronized public static Result syncWeather(Context context,
+                                                  CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+        Result result;
+        TraceUtils.beginSection("SyncTask.syncWeather");
+        try {
+            result = fetchAndStoreWeather(context, cancellationSignal);
+        } finally {
+            TraceUtils.endSection();
+        }
+        Metrics.recordSince("sync.total_us", start);
+        Metrics.counter("sync.result." + result.name().toLowerCase(Locale.US)).increment();
+
+        /* Once the server is back, the next failure starts from the shortest backoff again */
+        if (result == Result.SUCCESS || result == Result.NOT_MODIFIED) RetryPolicy.reset(context);
+
+        /* Debug builds keep the latest metrics in a file, to be pulled off the device */
+        if (BuildConfig.DEBUG) Metrics.writeDebugFile(context);
+
+        return result;
+    }
+
+    private static Result fetchAndStoreWeather(Context context,
+                                               CancellationSignal cancellationSignal) {
+        if (cancellationSignal.isCanceled()) return Result.CANCELLED;
+
+        /*
+         * The forecast is stored per location. Read the location setting up front, so the
+         * data ends up under the location it was actually fetched for, even if the user
+         * changes it while we're syncing.
+         */
+        String locationSetting = PreferencesUtils.getPreferredWeatherLocation(context);
+
+        /*
+         * The getUrl method will return the URL that we need to get the forecast JSON for the
+         * weather. It will decide whether to create a URL based off of the latitude and
+         * longitude or off of a simple location as a String.
+         */
+        long stageStart = System.nanoTime();
+        URL weatherRequestUrl = NetworkUtils.getUrl(context);
+        Metrics.recordSince("sync.url_build_us", stageStart);
+        if (weatherRequestUrl == null) return Result.FAILED;
+
+        CircuitBreaker circuitBreaker = CircuitBreaker.forEndpoint(weatherRequestUrl.getHost());
+        if (!circuitBreaker.allowRequest()) {
+            Log.w(TAG, "Weather server is cooling down for another "
+                    + circuitBreaker.getRemainingCoolDownMillis() + " ms");
+            return Result.RETRY;
+        }
 
         try {
             /*
-             * The getUrl method will return the URL that we need to get the forecast JSON for the
-             * weather. It will decide whether to create a URL based off of the latitude and
-             * longitude or off of a simple location as a String.
+             * If we already have a forecast for this location, only ask the server for the data
+             * if it changed since we stored it. Without one, a 304 would leave us with nothing
+             * to show, so we always fetch the whole forecast in that case. A sync that runs right
+             * after another one for the same URL is answered from the disk cache.
              */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            HttpResponse response;
+            TraceUtils.beginSection("SyncTask.fetch");
+            try {
+                response = NetworkUtils.openForecastUrl(context, weatherRequestUrl,
+                        hasStoredForecast(context, locationSetting), cancellationSignal);
+            } finally {
+                TraceUtils.endSection();
+            }
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            /*
+             * Use the URL to retrieve the JSON, and parse it into a forecast while it's still
+             * being downloaded
+             */
+            ForecastBatch forecast;
+            try {
+                if (response.isNotModified()) {
+                    /* Nothing changed, so there is nothing to parse, store or notify about */
+                    Log.d(TAG, "Weather not modified since the last sync");
+                    circuitBreaker.recordSuccess();
+
+                    /* The stored forecast is as fresh as if we had just downloaded it */
+                    ContentValues locationValues = new ContentValues();
+                    locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_SYNC,
+                            System.currentTimeMillis());
+                    context.getContentResolver().update(
+                            WeatherContract.LocationEntry.buildLocationUri(locationSetting),
+                            locationValues,
+                            null,
+                            null);
+
+                    Metrics.gauge("sync.last_rows_changed").set(0);
+
+                    /* The forecast is stable, so the next sync can wait a bit longer */
+                    SyncScheduler.onSyncCompleted(context, 0);
+                    return Result.NOT_MODIFIED;
+                }
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = JsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+                int code = response.getCode();
+                if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                        || code == HTTP_TOO_MANY_REQUESTS) {
+                    Log.w(TAG, "Weather server answered " + code);
+                    circuitBreaker.recordFailure();
+                    return Result.RETRY;
+                }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    Log.e(TAG, "Weather server rejected the request with " + code);
+                    circuitBreaker.recordSuccess();
+                    return Result.FAILED;
+                }
+
+                /*
+                 * The body is parsed while it's being downloaded, so the time spent blocked on
+                 * the network is taken out of the parse time and reported on its own
+                 */
+                stageStart = System.nanoTime();
+                forecast = JsonUtils.getForecastFromJson(
+                        context, response.getBodyReader(), cancellationSignal);
+
+                /* Only a forecast that parsed without an error code is worth caching */
+                if (forecast != null) response.complete();
+
+                long readNanos = response.getBodyReadNanos();
+                Metrics.histogram("sync.parse_us")
+                        .record((System.nanoTime() - stageStart - readNanos) / 1000);
+                Metrics.histogram("sync.body_read_us").record(readNanos / 1000);
+                Metrics.histogram("sync.body_bytes").record(response.getBodyBytesRead());
+                Metrics.counter("sync.bytes_received").add(response.getBodyBytesRead());
+            } finally {
+                response.close();
+            }
+
+            /*
+             * A forecast from the disk cache was stored by an earlier sync, so it tells us nothing
+             * about the server, whether the forecast changed or what the validators are now
+             */
+            boolean fromCache = response.isFromCache();
+            if (fromCache) {
+                circuitBreaker.recordCancelled();
+            } else {
+                /* The server answered with something we could read, so it's up and running */
+                circuitBreaker.recordSuccess();
+            }
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
+             * In cases where our JSON contained an error code, getForecastFromJson would have
+             * returned null. We need to check for those cases here to prevent any
              * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
              * there isn't any to insert.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
+            if (forecast == null || forecast.size() == 0) return Result.FAILED;
 
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver contentResolver = context.getContentResolver();
+            /* Don't even start writing if nobody wants the forecast anymore */
+            cancellationSignal.throwIfCanceled();
 
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                contentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+            /* Get a handle on the ContentResolver to replace the stored forecast */
+            ContentResolver contentResolver = context.getContentResolver();
 
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                contentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+            /*
+             * Swap the old weather data for the new one. We don't need to keep multiple
+             * days' data. The provider compares the new forecast with the stored one, so only
+             * the days that actually changed are written and reloaded by the UI.
+             */
+            stageStart = System.nanoTime();
+            int rowsChanged;
+            TraceUtils.beginSection("SyncTask.store");
+            try {
+                rowsChanged = WeatherContract.WeatherEntry.replaceForecast(
+                        contentResolver, locationSetting, forecast);
+            } finally {
+                TraceUtils.endSection();
+            }
+            Metrics.recordSince("sync.db_us", stageStart);
+            Metrics.counter("sync.rows_changed").add(rowsChanged);
+            Metrics.gauge("sync.last_rows_changed").set(rowsChanged);
 
-                /*
-                 * Finally, after we insert data into the ContentProvider, determine whether or not
-                 * we should notify the user that the weather has been refreshed.
-                 */
-                boolean notificationsEnabled = PreferencesUtils.areNotificationsEnabled(context);
+            /* Lets the next cold start show the new forecast before the database is opened */
+            stageStart = System.nanoTime();
+            TraceUtils.beginSection("SyncTask.snapshot");
+            try {
+                ForecastSnapshot.save(context, locationSetting);
+            } finally {
+                TraceUtils.endSection();
+            }
+            Metrics.recordSince("sync.snapshot_us", stageStart);
 
-                /*
-                 * If the last notification was shown was more than 1 day ago, we want to send
-                 * another notification to the user that the weather has been updated. Remember,
-                 * it's important that you shouldn't spam your users with notifications.
-                 */
-                long timeSinceLastNotification = PreferencesUtils
-                        .getEllapsedTimeSinceLastNotification(context);
+            if (!fromCache) {
+                /* Sync more often while the forecast keeps changing, and less while it doesn't */
+                SyncScheduler.onSyncCompleted(context, rowsChanged);
+
+                /* Now that the forecast is stored, later syncs can ask if it changed since */
+                HttpValidators.save(context, weatherRequestUrl, response);
+            }
 
-                boolean oneDayPassedSinceLastNotification = false;
+            /*
+             * Finally, after we insert data into the ContentProvider, determine whether or not
+             * we should notify the user that the weather has been refreshed.
+             */
+            boolean notificationsEnabled = PreferencesUtils.areNotificationsEnabled(context);
 
-                if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    oneDayPassedSinceLastNotification = true;
-                }
+            /*
+             * If the last notification was shown was more than 1 day ago, we want to send
+             * another notification to the user that the weather has been updated. Remember,
+             * it's important that you shouldn't spam your users with notifications.
+             */
+            long timeSinceLastNotification = PreferencesUtils
+                    .getEllapsedTimeSinceLastNotification(context);
 
-                /*
-                 * We only want to show the notification if the user wants them shown and we
-                 * haven't shown a notification in the past day.
-                 */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
+            boolean oneDayPassedSinceLastNotification = false;
+
+            if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
+                oneDayPassedSinceLastNotification = true;
+            }
+
+            /*
+             * We only want to show the notification if the user wants them shown and we
+             * haven't shown a notification in the past day.
+             */
+            if (notificationsEnabled && oneDayPassedSinceLastNotification
+                    && !cancellationSignal.isCanceled()) {
+                stageStart = System.nanoTime();
+                TraceUtils.beginSection("SyncTask.notify");
+                try {
                     NotificationUtils.notifyUserOfNewWeather(context);
+                } finally {
+                    TraceUtils.endSection();
                 }
+                Metrics.recordSince("sync.notify_us", stageStart);
             }
+            return Result.SUCCESS;
+
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Sync cancelled");
+            circuitBreaker.recordCancelled();
+            return Result.CANCELLED;
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            /*
+             * The server is up, but what it sends isn't a forecast. Asking again won't help, so
+             * the sync fails for good; the breaker only guards against an unreachable server,
+             * and this one answered.
+             */
+            Log.e(TAG, "Server sent an invalid forecast: " + e.getMessage());
+            circuitBreaker.recordSuccess();
+            return Result.FAILED;
+        } catch (IOException e) {
+            /* Cancelling tears the connection down, which surfaces here as an IOException */
+            if (cancellationSignal.isCanceled()) {
+                Log.d(TAG, "Sync cancelled while downloading");
+                circuitBreaker.recordCancelled();
+                return Result.CANCELLED;
+            }
+
+            /* Timeouts, dropped connections and the like are usually gone a bit later */
+            Log.e(TAG, "Weather server unreachable: " + e.getMessage());
+            circuitBreaker.recordFailure();
+            return Result.RETRY;
         } catch (Exception e) {
+            /* Storing the forecast went wrong, the server isn't to blame for that */
             Log.e(TAG, "Server probably invalid: " + e.getMessage());
+            circuitBreaker.recordSuccess();
+            return Result.FAILED;
+        }
+    }
+
+    /**
+     * Checks whether the database holds a forecast from today onwards for the given location.
+     *
+     * @param context         Used to access the ContentResolver
+     * @param locationSetting The location setting to check the forecast of
+     * @return true if there is at least one day of forecast to show
+     */
+    private static boolean hasStoredForecast(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithLocation(locationSetting),
+                new String[]{WeatherContract.WeatherEntry._ID},
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                null);
+
+        if (cursor == null) return false;
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
         }
     }
 }
\ No newline at end of file
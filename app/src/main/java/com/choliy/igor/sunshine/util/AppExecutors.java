@@ -0,0 +1,249 @@
+package com.choliy.igor.sunshine.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The thread pools all of Sunshine's background work runs on, instead of the single serial
+ * executor every AsyncTask shares. Short blocking work (database, scheduling) runs on a small,
+ * bounded I/O pool. Syncs get a serial lane of their own, so a long download never takes a
+ * thread away from that work and syncs never wait on each other while holding one.
+ * <p>
+ * Within a pool, work the user is waiting for ({@link Priority#USER_VISIBLE}) jumps the queue
+ * ahead of work nobody is looking at ({@link Priority#BACKGROUND}), such as a periodic sync.
+ */
+public final class AppExecutors {
+
+    private static final String TAG = AppExecutors.class.getSimpleName();
+
+    /* Network and database calls mostly wait, a few threads are enough to keep them moving */
+    private static final int IO_THREADS = 3;
+
+    /* Syncs run one at a time, the forecast is stored by a single writer anyway */
+    private static final int SYNC_THREADS = 1;
+
+    /* Idle threads are let go after this long */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Which lane of a pool a task runs in. Queued tasks of a higher priority run first, tasks of
+     * the same priority run in the order they were submitted.
+     */
+    public enum Priority {
+        /* Work the user is waiting to see, e.g. the data of the screen that's opening */
+        USER_VISIBLE,
+        /* Work nobody is waiting for, e.g. a scheduled sync */
+        BACKGROUND
+    }
+
+    private static final Pool sIo = new Pool("sunshine-io", IO_THREADS);
+    private static final Pool sSync = new Pool("sunshine-sync", SYNC_THREADS);
+    private static final Handler sMainThread = new Handler(Looper.getMainLooper());
+
+    private AppExecutors() {
+    }
+
+    /**
+     * @return The pool for work that blocks on the network or the database
+     */
+    public static Pool io() {
+        return sIo;
+    }
+
+    /**
+     * @return The serial lane syncs run in, parsing included since it streams off the network
+     */
+    public static Pool sync() {
+        return sSync;
+    }
+
+    /**
+     * Runs the given task on the main thread, e.g. to hand a background result to the UI.
+     *
+     * @param task The task to run
+     */
+    public static void runOnMainThread(Runnable task) {
+        sMainThread.post(task);
+    }
+
+    /**
+     * A bounded thread pool whose queue is ordered by {@link Priority}. It keeps track of how
+     * deep its queue is, how busy its threads are and how long tasks wait in the queue before
+     * they run, and reports all of it as {@link Metrics} gauges.
+     */
+    public static final class Pool implements Executor {
+
+        private final String mName;
+        private final ThreadPoolExecutor mExecutor;
+        private final AtomicLong mSequence = new AtomicLong();
+
+        private final AtomicInteger mExecutedCount = new AtomicInteger();
+        private final AtomicLong mTotalWaitMillis = new AtomicLong();
+        private final AtomicLong mMaxWaitMillis = new AtomicLong();
+
+        private Pool(final String name, int threads) {
+            mName = name;
+
+            /*
+             * The priority queue is unbounded, so the pool never grows past its core size; the
+             * bound on threads comes from that core size alone.
+             */
+            mExecutor = new ThreadPoolExecutor(threads, threads,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(@NonNull Runnable runnable) {
+                            return new Thread(runnable, name + "-" + mThreadCount.incrementAndGet());
+                        }
+                    });
+            mExecutor.allowCoreThreadTimeOut(true);
+
+            Metrics.registerGauge("executor." + name + ".queue_depth", new Metrics.Gauge.Source() {
+                @Override
+                public long get() {
+                    return getQueueDepth();
+                }
+            });
+            Metrics.registerGauge("executor." + name + ".max_wait_ms", new Metrics.Gauge.Source() {
+                @Override
+                public long get() {
+                    return getMaxWaitMillis();
+                }
+            });
+            Metrics.registerGauge("executor." + name + ".avg_wait_ms", new Metrics.Gauge.Source() {
+                @Override
+                public long get() {
+                    return getAverageWaitMillis();
+                }
+            });
+            Metrics.registerGauge("executor." + name + ".active", new Metrics.Gauge.Source() {
+                @Override
+                public long get() {
+                    return getActiveCount();
+                }
+            });
+            Metrics.registerGauge("executor." + name + ".executed", new Metrics.Gauge.Source() {
+                @Override
+                public long get() {
+                    return getExecutedCount();
+                }
+            });
+        }
+
+        /**
+         * Runs the given task in the background lane.
+         *
+         * @param task The task to run
+         */
+        @Override
+        public void execute(@NonNull Runnable task) {
+            execute(Priority.BACKGROUND, task);
+        }
+
+        /**
+         * Runs the given task in the given lane.
+         *
+         * @param priority The lane to queue the task in
+         * @param task     The task to run
+         */
+        public void execute(Priority priority, Runnable task) {
+            /* Only execute() keeps our wrapper as it is, submit() would hide it in a FutureTask */
+            mExecutor.execute(new PrioritizedTask(priority, mSequence.getAndIncrement(), task));
+        }
+
+        /**
+         * @return How many tasks are waiting for a thread right now
+         */
+        public int getQueueDepth() {
+            return mExecutor.getQueue().size();
+        }
+
+        /**
+         * @return How many tasks are running right now
+         */
+        public int getActiveCount() {
+            return mExecutor.getActiveCount();
+        }
+
+        /**
+         * @return How many tasks were started so far
+         */
+        public int getExecutedCount() {
+            return mExecutedCount.get();
+        }
+
+        /**
+         * @return How long tasks waited in the queue on average before they ran
+         */
+        public long getAverageWaitMillis() {
+            int executedCount = mExecutedCount.get();
+            return executedCount == 0 ? 0 : mTotalWaitMillis.get() / executedCount;
+        }
+
+        /**
+         * @return The longest any task waited in the queue before it ran
+         */
+        public long getMaxWaitMillis() {
+            return mMaxWaitMillis.get();
+        }
+
+        private void recordWait(Priority priority, long waitMillis) {
+            mExecutedCount.incrementAndGet();
+            mTotalWaitMillis.addAndGet(waitMillis);
+
+            long max;
+            do {
+                max = mMaxWaitMillis.get();
+            } while (waitMillis > max && !mMaxWaitMillis.compareAndSet(max, waitMillis));
+
+            if (priority == Priority.USER_VISIBLE && waitMillis > 0) {
+                Log.v(TAG, mName + ": user visible task waited " + waitMillis + " ms");
+            }
+        }
+
+        /**
+         * A task in the queue of a pool, ordered by priority first and submission order second.
+         */
+        private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+            private final Priority mPriority;
+            private final long mSequence;
+            private final Runnable mTask;
+            private final long mQueuedAt;
+
+            PrioritizedTask(Priority priority, long sequence, Runnable task) {
+                mPriority = priority;
+                mSequence = sequence;
+                mTask = task;
+                mQueuedAt = SystemClock.elapsedRealtime();
+            }
+
+            @Override
+            public void run() {
+                recordWait(mPriority, SystemClock.elapsedRealtime() - mQueuedAt);
+                mTask.run();
+            }
+
+            @Override
+            public int compareTo(@NonNull PrioritizedTask other) {
+                int byPriority = mPriority.compareTo(other.mPriority);
+                if (byPriority != 0) return byPriority;
+                return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+            }
+        }
+    }
+}
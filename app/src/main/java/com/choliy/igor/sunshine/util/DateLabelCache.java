@@ -0,0 +1,209 @@
+package com.choliy.igor.sunshine.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.choliy.igor.sunshine.core.Clock;
+import com.choliy.igor.sunshine.core.WeatherDates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Keeps the friendly date labels, e.g. "Today, June 8", "Tomorrow" or "Friday", of the days a
+ * forecast covers. The labels of the days from yesterday up to {@link #HORIZON_DAYS} ahead are
+ * formatted in one go, and looked up by their normalized UTC date afterwards, which costs an
+ * array access and allocates nothing.
+ * <p>
+ * What a day is labelled depends on what today is, and on the time zone and the locale, so the
+ * labels are formatted again once the day rolls over, or after the system announces a change of
+ * time zone, locale or clock. Days outside of the horizon are formatted on every call.
+ * <p>
+ * Labels that were already handed out, e.g. to the items of a loaded forecast list, don't change
+ * by themselves. Whoever holds on to them can register an {@link OnInvalidatedListener} to hear
+ * when they should be fetched again.
+ */
+public final class DateLabelCache {
+
+    /* The forecast covers two weeks, plus a bit of slack for a late sync */
+    public static final int HORIZON_DAYS = 16;
+
+    /* Yesterday is still shown until the next sync, if the day rolls over in between */
+    private static final int DAYS_BEFORE_TODAY = 1;
+
+    private static DateLabelCache sInstance;
+
+    private final Context mContext;
+
+    /* Null when the labels must be formatted again */
+    private volatile Labels mLabels;
+
+    /*
+     * Counts invalidations, so labels that were being formatted while one happened aren't
+     * published. Guarded by mPublishLock, which is only held for a moment, unlike the lock of
+     * formatLabels, so the receiver never waits on a format running on another thread.
+     */
+    private final Object mPublishLock = new Object();
+    private int mGeneration;
+
+    /* Only touched on the main thread */
+    private final List<OnInvalidatedListener> mListeners = new ArrayList<>();
+
+    private final BroadcastReceiver mInvalidator = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            synchronized (mPublishLock) {
+                mGeneration++;
+                mLabels = null;
+            }
+
+            /* Copied, a listener may unregister itself while it's being notified */
+            for (OnInvalidatedListener listener : new ArrayList<>(mListeners)) {
+                listener.onLabelsInvalidated();
+            }
+        }
+    };
+
+    private DateLabelCache(Context context) {
+        mContext = context;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.registerReceiver(mInvalidator, filter);
+    }
+
+    /**
+     * @param context Used to format the labels and to hear about changes, the application
+     *                context is kept
+     * @return The labels shared by the whole app
+     */
+    public static synchronized DateLabelCache getInstance(Context context) {
+        if (sInstance == null) sInstance = new DateLabelCache(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * Registers a listener to be told, on the main thread, when the labels changed because the
+     * date, the time, the time zone or the locale changed. Must be called on the main thread.
+     *
+     * @param listener The listener to add
+     */
+    public void registerOnInvalidatedListener(OnInvalidatedListener listener) {
+        if (!mListeners.contains(listener)) mListeners.add(listener);
+    }
+
+    /**
+     * Must be called on the main thread.
+     *
+     * @param listener The listener to remove
+     */
+    public void unregisterOnInvalidatedListener(OnInvalidatedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Same as {@link DateTimeUtils#getFriendlyDateString(Context, long, boolean)}.
+     *
+     * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+     * @param showFullDate          Whether to always show the date along with the day name
+     * @return A user-friendly representation of the date
+     */
+    public String getLabel(long normalizedUtcMidnight, boolean showFullDate) {
+        Labels labels = mLabels;
+        if (labels == null || System.currentTimeMillis() >= labels.validUntil) {
+            labels = formatLabels();
+        }
+
+        int index = (int) (WeatherDates.elapsedDaysSinceEpoch(normalizedUtcMidnight)
+                - labels.firstDay);
+        if (index >= 0 && index < labels.brief.length
+                && WeatherDates.isDateNormalized(normalizedUtcMidnight)) {
+            return showFullDate ? labels.full[index] : labels.brief[index];
+        }
+
+        return DateTimeUtils.formatFriendlyDateString(
+                mContext, normalizedUtcMidnight, showFullDate);
+    }
+
+    private synchronized Labels formatLabels() {
+        /* Another thread may have done it while this one was waiting */
+        Labels labels = mLabels;
+        long now = System.currentTimeMillis();
+        if (labels != null && now < labels.validUntil) return labels;
+
+        int generation;
+        synchronized (mPublishLock) {
+            generation = mGeneration;
+        }
+
+        long today = WeatherDates.getNormalizedUtcDateForToday(Clock.SYSTEM);
+        long firstDate = today - DAYS_BEFORE_TODAY * WeatherDates.DAY_IN_MILLIS;
+        int count = DAYS_BEFORE_TODAY + 1 + HORIZON_DAYS;
+
+        String[] brief = new String[count];
+        String[] full = new String[count];
+        for (int i = 0; i < count; i++) {
+            long date = firstDate + i * WeatherDates.DAY_IN_MILLIS;
+            brief[i] = DateTimeUtils.formatFriendlyDateString(mContext, date, false);
+            full[i] = DateTimeUtils.formatFriendlyDateString(mContext, date, true);
+        }
+
+        /*
+         * The labels count days in local time as well as in UTC, so they are good until
+         * whichever of the two midnights comes first
+         */
+        long nextLocalMidnight = WeatherDates.getLocalMidnightFromNormalizedUtcDate(
+                today + WeatherDates.DAY_IN_MILLIS, TimeZone.getDefault());
+        long nextUtcMidnight = WeatherDates.normalizeDate(now) + WeatherDates.DAY_IN_MILLIS;
+
+        labels = new Labels(WeatherDates.elapsedDaysSinceEpoch(firstDate),
+                Math.min(nextLocalMidnight, nextUtcMidnight), brief, full);
+
+        /*
+         * If the labels were invalidated in the meantime, they may have been formatted for the
+         * old time zone or locale. They still answer this call, but the next one formats again.
+         */
+        synchronized (mPublishLock) {
+            if (generation == mGeneration) mLabels = labels;
+        }
+        return labels;
+    }
+
+    /**
+     * Told when labels handed out earlier may be out of date.
+     */
+    public interface OnInvalidatedListener {
+
+        /**
+         * Called on the main thread after the labels were invalidated. Labels fetched from now on
+         * are up to date.
+         */
+        void onLabelsInvalidated();
+    }
+
+    /**
+     * The labels of the days in the horizon, as of one day.
+     */
+    private static final class Labels {
+
+        /* The days since the epoch of the first label */
+        final long firstDay;
+        /* When the labels go stale, in milliseconds since the epoch */
+        final long validUntil;
+        final String[] brief;
+        final String[] full;
+
+        Labels(long firstDay, long validUntil, String[] brief, String[] full) {
+            this.firstDay = firstDay;
+            this.validUntil = validUntil;
+            this.brief = brief;
+            this.full = full;
+        }
+    }
+}
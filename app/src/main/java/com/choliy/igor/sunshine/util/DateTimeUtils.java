@@ -3,18 +3,21 @@ package com.choliy.igor.sunshine.util;
 import android.content.Context;
 
 import com.choliy.igor.sunshine.R;
+import com.choliy.igor.sunshine.core.Clock;
+import com.choliy.igor.sunshine.core.WeatherDates;
 
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
- * Class for handling date conversions that are useful for Sunshine.
+ * Class for handling date conversions that are useful for Sunshine. The date math itself lives in
+ * {@link WeatherDates} of the core module, this class adds what needs Android, such as
+ * localized, user-friendly date strings.
  */
 public final class DateTimeUtils {
 
     /* Milliseconds in a day */
-    public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final long DAY_IN_MILLIS = WeatherDates.DAY_IN_MILLIS;
 
     /**
      * This method returns the number of milliseconds (UTC time) for today's date at midnight in
@@ -40,45 +43,7 @@ public final class DateTimeUtils {
      * time zone
      */
     public static long getNormalizedUtcDateForToday() {
-
-        /*
-         * This number represents the number of milliseconds that have elapsed since January
-         * 1st, 1970 at midnight in the GMT time zone.
-         */
-        long utcNowMillis = System.currentTimeMillis();
-
-        /*
-         * This TimeZone represents the device's current time zone. It provides us with a means
-         * of acquiring the offset for local time from a UTC time stamp.
-         */
-        TimeZone currentTimeZone = TimeZone.getDefault();
-
-        /*
-         * The getOffset method returns the number of milliseconds to add to UTC time to get the
-         * elapsed time since the epoch for our current time zone. We pass the current UTC time
-         * into this method so it can determine changes to account for daylight savings time.
-         */
-        long gmtOffsetMillis = currentTimeZone.getOffset(utcNowMillis);
-
-        /*
-         * UTC time is measured in milliseconds from January 1, 1970 at midnight from the GMT
-         * time zone. Depending on your time zone, the time since January 1, 1970 at midnight (GMT)
-         * will be greater or smaller. This variable represents the number of milliseconds since
-         * January 1, 1970 (GMT) time.
-         */
-        long timeSinceEpochLocalTimeMillis = utcNowMillis + gmtOffsetMillis;
-
-        /* This method simply converts milliseconds to days, disregarding any fractional days */
-        long daysSinceEpochLocal = TimeUnit.MILLISECONDS.toDays(timeSinceEpochLocalTimeMillis);
-
-        /*
-         * Finally, we convert back to milliseconds. This time stamp represents today's date at
-         * midnight in GMT time. We will need to account for local time zone offsets when
-         * extracting this information from the database.
-         */
-        long normalizedUtcMidnightMillis = TimeUnit.DAYS.toMillis(daysSinceEpochLocal);
-
-        return normalizedUtcMidnightMillis;
+        return WeatherDates.getNormalizedUtcDateForToday(Clock.SYSTEM);
     }
 
     /**
@@ -89,7 +54,7 @@ public final class DateTimeUtils {
      * @return The number of days from the epoch to the date argument.
      */
     private static long elapsedDaysSinceEpoch(long utcDate) {
-        return TimeUnit.MILLISECONDS.toDays(utcDate);
+        return WeatherDates.elapsedDaysSinceEpoch(utcDate);
     }
 
     /**
@@ -118,9 +83,7 @@ public final class DateTimeUtils {
      * @return The UTC date at 12 midnight of the date
      */
     public static long normalizeDate(long date) {
-        long daysSinceEpoch = elapsedDaysSinceEpoch(date);
-        long millisFromEpochToTodayAtMidnightUtc = daysSinceEpoch * DAY_IN_MILLIS;
-        return millisFromEpochToTodayAtMidnightUtc;
+        return WeatherDates.normalizeDate(date);
     }
 
     /**
@@ -132,12 +95,7 @@ public final class DateTimeUtils {
      * @return true if the date represents the beginning of a day in Unix time, false otherwise
      */
     public static boolean isDateNormalized(long millisSinceEpoch) {
-        boolean isDateNormalized = false;
-        if (millisSinceEpoch % DAY_IN_MILLIS == 0) {
-            isDateNormalized = true;
-        }
-
-        return isDateNormalized;
+        return WeatherDates.isDateNormalized(millisSinceEpoch);
     }
 
     /**
@@ -148,17 +106,9 @@ public final class DateTimeUtils {
      * @return The local date corresponding to the given normalized UTC date
      */
     private static long getLocalMidnightFromNormalizedUtcDate(long normalizedUtcDate) {
-
-        /* The timeZone object will provide us the current user's time zone offset */
-        TimeZone timeZone = TimeZone.getDefault();
-
-        /*
-         * This offset, in milliseconds, when added to a UTC date time,
-         * will produce the local time.
-         */
-        long gmtOffset = timeZone.getOffset(normalizedUtcDate);
-        long localMidnightMillis = normalizedUtcDate - gmtOffset;
-        return localMidnightMillis;
+        /* The current user's time zone decides which local midnight it is */
+        return WeatherDates.getLocalMidnightFromNormalizedUtcDate(
+                normalizedUtcDate, TimeZone.getDefault());
     }
 
     /**
@@ -182,6 +132,22 @@ public final class DateTimeUtils {
     public static String getFriendlyDateString(Context context,
                                                long normalizedUtcMidnight,
                                                boolean showFullDate) {
+        /* The days of the forecast are labelled once a day, see DateLabelCache */
+        return DateLabelCache.getInstance(context).getLabel(normalizedUtcMidnight, showFullDate);
+    }
+
+    /**
+     * Formats the label {@link #getFriendlyDateString(Context, long, boolean)} returns, without
+     * looking in the {@link DateLabelCache}.
+     *
+     * @param context               Context to use for resource localization
+     * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+     * @param showFullDate          Whether to always show the date along with the day name
+     * @return A user-friendly representation of the date
+     */
+    static String formatFriendlyDateString(Context context,
+                                           long normalizedUtcMidnight,
+                                           boolean showFullDate) {
 
         /*
          * NOTE: localDate should be localDateMidnightMillis and should be straight from the
@@ -1,162 +1,79 @@
 package com.choliy.igor.sunshine.util;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
-import com.choliy.igor.sunshine.data.WeatherContract;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.choliy.igor.sunshine.core.CancellationCheck;
+import com.choliy.igor.sunshine.core.Clock;
+import com.choliy.igor.sunshine.core.ForecastBatch;
+import com.choliy.igor.sunshine.core.ForecastParser;
+import com.choliy.igor.sunshine.core.ForecastResponse;
+import com.choliy.igor.sunshine.core.OwmForecastParser;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 
 /**
- * Utility functions to handle OpenWeatherMap JSON data.
+ * Utility functions to handle OpenWeatherMap JSON data. The parsing itself is done by the
+ * {@link OwmForecastParser} of the core module, this class connects it to Android.
  */
 public final class JsonUtils {
 
     private static final String TAG = JsonUtils.class.getSimpleName();
 
-    /* Location information */
-    private static final String OWM_CITY = "city";
-    private static final String OWM_COORD = "coord";
-
-    /* Location coordinate */
-    private static final String OWM_LATITUDE = "lat";
-    private static final String OWM_LONGITUDE = "lon";
-
-    /* Weather information. Each day's forecast info is an element of the "list" array */
-    private static final String OWM_LIST = "list";
-
-    private static final String OWM_PRESSURE = "pressure";
-    private static final String OWM_HUMIDITY = "humidity";
-    private static final String OWM_WIND_SPEED = "speed";
-    private static final String OWM_WIND_DIRECTION = "deg";
-
-    /* All temperatures are children of the "temp" object */
-    private static final String OWM_TEMPERATURE = "temp";
-
-    /* Max temperature for the day */
-    private static final String OWM_MAX = "max";
-    private static final String OWM_MIN = "min";
-    private static final String OWM_WEATHER = "weather";
-    private static final String OWM_WEATHER_ID = "id";
-    private static final String OWM_MESSAGE_CODE = "cod";
+    private static final ForecastParser sForecastParser = new OwmForecastParser(Clock.SYSTEM);
 
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * This method parses the JSON of a forecast response straight from the response stream, one
+     * token at a time. Neither the response body nor a JSON tree is ever held in memory, the
+     * values go directly into the primitive arrays of a {@link ForecastBatch}.
      *
-     * @param forecastJsonStr JSON response from server
-     * @return Array of Strings describing weather data
-     * @throws JSONException If JSON data cannot be properly parsed
+     * @param context            Used to save the location coordinates to the preferences
+     * @param forecastReader     JSON response from server, already decoded with its charset
+     * @param cancellationSignal Checked before every day of the forecast, may be null
+     * @return The parsed forecast, or null if the server answered with an error code
+     * @throws IOException                If the stream can't be read or the JSON data cannot be
+     *                                    properly parsed
+     * @throws OperationCanceledException If the signal was cancelled during the parse
      */
-    public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
-            throws JSONException {
+    public static ForecastBatch getForecastFromJson(Context context, Reader forecastReader,
+                                                    final CancellationSignal cancellationSignal)
+            throws IOException {
+
+        CancellationCheck cancellationCheck = CancellationCheck.NONE;
+        if (cancellationSignal != null) {
+            cancellationCheck = new CancellationCheck() {
+                @Override
+                public void throwIfCanceled() {
+                    cancellationSignal.throwIfCanceled();
+                }
+            };
+        }
 
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        ForecastResponse response;
+        TraceUtils.beginSection("JsonUtils.getForecastFromJson");
+        try {
+            response = sForecastParser.parse(forecastReader, cancellationCheck);
+        } finally {
+            TraceUtils.endSection();
+        }
 
         /* Is there an error? */
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-            switch (errorCode) {
-                case HttpURLConnection.HTTP_OK:
-                    break;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    Log.i(TAG, "Location invalid");
-                    return null;
-                default:
-                    Log.i(TAG, "Server probably down");
-                    return null;
+        if (!response.isSuccessful()) {
+            if (response.getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                Log.i(TAG, "Location invalid");
+            } else {
+                Log.i(TAG, "Server probably down");
             }
+            return null;
         }
 
-        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-
-        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-        PreferencesUtils.setLocationDetails(context, cityLatitude, cityLongitude);
-
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
-
-        /*
-         * OWM returns daily forecasts based upon the local time of the city that is being asked
-         * for, which means that we need to know the GMT offset to translate this data properly.
-         * Since this data is also sent in-order and the first day is always the current day, we're
-         * going to take advantage of that to get a nice normalized UTC date for all of our weather.
-         */
-        long normalizedUtcStartDay = DateTimeUtils.getNormalizedUtcDateForToday();
-
-        for (int i = 0; i < jsonWeatherArray.length(); i++) {
-
-            long dateTimeMillis;
-            double pressure;
-            int humidity;
-            double windSpeed;
-            double windDirection;
-
-            double maxTemp;
-            double minTemp;
-
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
-
-            /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
-             */
-            dateTimeMillis = normalizedUtcStartDay + DateTimeUtils.DAY_IN_MILLIS * i;
-
-            pressure = dayForecast.getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getInt(OWM_HUMIDITY);
-            windSpeed = dayForecast.getDouble(OWM_WIND_SPEED);
-            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-            /*
-             * Description is in a child array called "weather", which is 1 element long.
-             * That element also contains a weather code.
-             */
-            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-            /*
-             * Temperatures are sent by Open Weather Map in a child object called "temp".
-             *
-             * Editor's Note: Try not to name variables "temp" when working with temperature.
-             * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary variable, temporary folder, temporary employee, or many
-             * others, and is just a bad variable name.
-             */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            maxTemp = temperatureObject.getDouble(OWM_MAX);
-            minTemp = temperatureObject.getDouble(OWM_MIN);
-
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, minTemp);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-            weatherContentValues[i] = weatherValues;
-        }
+        PreferencesUtils.setLocationDetails(context,
+                response.getCityLatitude(), response.getCityLongitude());
 
-        return weatherContentValues;
+        return response.getForecast();
     }
-}
\ No newline at end of file
+}
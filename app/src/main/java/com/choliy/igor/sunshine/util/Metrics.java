@@ -0,0 +1,294 @@
+package com.choliy.igor.sunshine.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An in-process registry of counters, gauges and histograms, so we can see where the time of a
+ * sync goes and spot regressions and tail latency in production builds. Metrics live as long as
+ * the process and cost a few atomic operations to update, so they can stay on in release builds.
+ * <p>
+ * The registry is printed by {@code adb shell dumpsys activity provider
+ * com.choliy.igor.sunshine/.data.WeatherProvider}, and debug builds also write it to
+ * {@link #DEBUG_FILE_NAME} in the app's files directory after every sync, where
+ * {@code adb shell run-as com.choliy.igor.sunshine cat files/metrics.txt} can read it.
+ * <p>
+ * Durations are recorded in microseconds, and the names of their histograms end in "_us".
+ */
+public final class Metrics {
+
+    private static final String TAG = Metrics.class.getSimpleName();
+
+    public static final String DEBUG_FILE_NAME = "metrics.txt";
+
+    /* Sorted by name, so related metrics end up next to each other in the dump */
+    private static final Map<String, Counter> sCounters = new TreeMap<>();
+    private static final Map<String, Gauge> sGauges = new TreeMap<>();
+    private static final Map<String, Histogram> sHistograms = new TreeMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name The name of the counter, e.g. "sync.result.success"
+     * @return The counter of the given name, created on first use
+     */
+    public static Counter counter(String name) {
+        synchronized (sCounters) {
+            Counter counter = sCounters.get(name);
+            if (counter == null) {
+                counter = new Counter();
+                sCounters.put(name, counter);
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * @param name The name of the gauge, e.g. "sync.last_rows_changed"
+     * @return The gauge of the given name, created on first use
+     */
+    public static Gauge gauge(String name) {
+        synchronized (sGauges) {
+            Gauge gauge = sGauges.get(name);
+            if (gauge == null) {
+                gauge = new Gauge(null);
+                sGauges.put(name, gauge);
+            }
+            return gauge;
+        }
+    }
+
+    /**
+     * Registers a gauge whose value is read from the given source whenever it's dumped, for
+     * values that are already kept somewhere else, such as the depth of a queue.
+     *
+     * @param name   The name of the gauge, e.g. "executor.io.queue_depth"
+     * @param source Provides the current value of the gauge
+     */
+    public static void registerGauge(String name, Gauge.Source source) {
+        synchronized (sGauges) {
+            sGauges.put(name, new Gauge(source));
+        }
+    }
+
+    /**
+     * @param name The name of the histogram, e.g. "sync.parse_us"
+     * @return The histogram of the given name, created on first use
+     */
+    public static Histogram histogram(String name) {
+        synchronized (sHistograms) {
+            Histogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sHistograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Records the time since the given start into the histogram of the given name.
+     *
+     * @param name       The name of the histogram
+     * @param startNanos When the measured work started, from {@link System#nanoTime()}
+     * @return The current {@link System#nanoTime()}, to chain the measurement of the next stage
+     */
+    public static long recordSince(String name, long startNanos) {
+        long now = System.nanoTime();
+        histogram(name).record((now - startNanos) / 1000);
+        return now;
+    }
+
+    /**
+     * Prints every metric, one per line.
+     *
+     * @param writer Where to print the metrics
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("Counters:");
+        synchronized (sCounters) {
+            for (Map.Entry<String, Counter> entry : sCounters.entrySet()) {
+                writer.println("  " + entry.getKey() + " = " + entry.getValue().get());
+            }
+        }
+
+        writer.println("Gauges:");
+        synchronized (sGauges) {
+            for (Map.Entry<String, Gauge> entry : sGauges.entrySet()) {
+                writer.println("  " + entry.getKey() + " = " + entry.getValue().get());
+            }
+        }
+
+        writer.println("Histograms:");
+        synchronized (sHistograms) {
+            for (Map.Entry<String, Histogram> entry : sHistograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+                writer.println("  " + entry.getKey()
+                        + " count=" + histogram.getCount()
+                        + " mean=" + histogram.getMean()
+                        + " p50=" + histogram.getPercentile(50)
+                        + " p90=" + histogram.getPercentile(90)
+                        + " p99=" + histogram.getPercentile(99)
+                        + " max=" + histogram.getMax());
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes every metric to {@link #DEBUG_FILE_NAME} in the app's files directory, replacing
+     * what an earlier call wrote.
+     *
+     * @param context Used to find the files directory
+     */
+    public static void writeDebugFile(Context context) {
+        File file = new File(context.getFilesDir(), DEBUG_FILE_NAME);
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new FileWriter(file));
+            dump(writer);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write " + file + ": " + e.getMessage());
+        } finally {
+            if (writer != null) writer.close();
+        }
+    }
+
+    /**
+     * A value that only goes up, such as the number of bytes received so far.
+     */
+    public static final class Counter {
+
+        private final AtomicLong mValue = new AtomicLong();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * A value that can go up and down, either set directly or read from a {@link Source}.
+     */
+    public static final class Gauge {
+
+        /**
+         * Provides the value of a gauge that is kept somewhere else.
+         */
+        public interface Source {
+            long get();
+        }
+
+        private final Source mSource;
+        private volatile long mValue;
+
+        private Gauge(Source source) {
+            mSource = source;
+        }
+
+        /**
+         * @param value The new value of the gauge, ignored if it has a {@link Source}
+         */
+        public void set(long value) {
+            mValue = value;
+        }
+
+        public long get() {
+            return mSource != null ? mSource.get() : mValue;
+        }
+    }
+
+    /**
+     * The distribution of a value, such as the duration of a stage of the sync. Values are
+     * counted in buckets whose bounds are powers of two, so recording is lock-free and the
+     * memory used is fixed, at the price of percentiles being accurate to a factor of two. The
+     * exact mean and maximum are kept as well.
+     */
+    public static final class Histogram {
+
+        /* Bucket 0 holds values of 0 or less, bucket i holds values in [2^(i-1), 2^i) */
+        private static final int BUCKET_COUNT = 64;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        private Histogram() {
+        }
+
+        /**
+         * @param value The value to add to the distribution
+         */
+        public void record(long value) {
+            int bucket = value <= 0 ? 0 : Math.min(BUCKET_COUNT - 1,
+                    Long.SIZE - Long.numberOfLeadingZeros(value));
+            mBuckets.incrementAndGet(bucket);
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+
+            long max;
+            do {
+                max = mMax.get();
+            } while (value > max && !mMax.compareAndSet(max, value));
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * @return The mean of the recorded values, or 0 if nothing was recorded yet
+         */
+        public long getMean() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSum.get() / count;
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        /**
+         * @param percentile Between 0 and 100, e.g. 99 for the value 99% of the recorded values
+         *                   are below
+         * @return The upper bound of the bucket the percentile falls into, but no more than the
+         * maximum, or 0 if nothing was recorded yet
+         */
+        public long getPercentile(double percentile) {
+            long count = mCount.get();
+            if (count == 0) return 0;
+
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += mBuckets.get(bucket);
+                if (seen >= rank) {
+                    long upperBound = bucket == 0 ? 0 : (1L << bucket) - 1;
+                    return Math.min(upperBound, mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+    }
+}
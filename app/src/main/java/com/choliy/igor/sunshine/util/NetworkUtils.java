@@ -2,14 +2,19 @@ package com.choliy.igor.sunshine.util;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.util.Log;
 
+import com.choliy.igor.sunshine.BuildConfig;
+import com.choliy.igor.sunshine.network.HttpDiskCache;
+import com.choliy.igor.sunshine.network.HttpResponse;
+import com.choliy.igor.sunshine.network.HttpValidators;
+import com.choliy.igor.sunshine.network.WeatherHttpClient;
+
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -24,10 +29,12 @@ public final class NetworkUtils {
     private static final String STATIC_WEATHER_URL =
             "https://andfun-weather.udacity.com/staticweather";
 
-    private static final String DYNAMIC_WEATHER_URL =
-            "https://andfun-weather.udacity.com/weather";
-
-    private static final String FORECAST_BASE_URL = DYNAMIC_WEATHER_URL;
+    /*
+     * Where the forecast is fetched from. It's the dynamic weather server set in app/build.gradle
+     * unless the build was given another one with -PforecastBaseUrl, and tests can point it at a
+     * fake server at runtime.
+     */
+    private static volatile String sForecastBaseUrl = BuildConfig.FORECAST_BASE_URL;
 
     /*
      * NOTE: These values only effect responses from OpenWeatherMap, NOT from the fake weather
@@ -50,6 +57,26 @@ public final class NetworkUtils {
     private static final String UNITS_PARAM = "units";
     private static final String DAYS_PARAM = "cnt";
 
+    /**
+     * Points the forecast URLs built from now on at another server, e.g. a fake one on the
+     * loopback interface.
+     *
+     * @param forecastBaseUrl The URL the query parameters of a forecast request are appended to,
+     *                        null to go back to the one the app was built with
+     */
+    public static void setForecastBaseUrl(String forecastBaseUrl) {
+        sForecastBaseUrl = forecastBaseUrl != null
+                ? forecastBaseUrl
+                : BuildConfig.FORECAST_BASE_URL;
+    }
+
+    /**
+     * @return The URL the query parameters of a forecast request are appended to
+     */
+    public static String getForecastBaseUrl() {
+        return sForecastBaseUrl;
+    }
+
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
      * well as {@link #buildUrlWithLocationQuery(String)} is two fold.
@@ -84,7 +111,7 @@ public final class NetworkUtils {
      * @return The URL to use to query the weather server.
      */
     private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+        Uri weatherQueryUri = Uri.parse(sForecastBaseUrl).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, FORMAT)
                 .appendQueryParameter(UNITS_PARAM, UNITS)
@@ -110,7 +137,7 @@ public final class NetworkUtils {
      * @return The Url to use to query the weather server.
      */
     private static URL buildUrlWithLatitudeLongitude(Double latitude, Double longitude) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+        Uri weatherQueryUri = Uri.parse(sForecastBaseUrl).buildUpon()
                 .appendQueryParameter(LATITUDE_PARAM, String.valueOf(latitude))
                 .appendQueryParameter(LONGITUDE_PARAM, String.valueOf(longitude))
                 .appendQueryParameter(FORMAT_PARAM, FORMAT)
@@ -128,29 +155,101 @@ public final class NetworkUtils {
         }
     }
 
+    /**
+     * Sends a GET request to the given URL through the shared {@link WeatherHttpClient} and
+     * returns its response, ready for the body to be streamed. The response is requested gzipped,
+     * which is decompressed transparently by {@link HttpResponse}. The caller must close the
+     * response once it's done reading, which lets the connection be reused.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @return The response, with its status line and headers already read
+     * @throws IOException Related to network
+     */
+    public static HttpResponse openHttpUrl(URL url) throws IOException {
+        return openHttpUrl(url, null);
+    }
+
+    /**
+     * Same as {@link #openHttpUrl(URL)}, but the request is aborted when the given signal is
+     * cancelled.
+     *
+     * @param url                The URL to fetch the HTTP response from.
+     * @param cancellationSignal Aborts the request when cancelled, may be null
+     * @return The response, with its status line and headers already read
+     * @throws IOException Related to network
+     */
+    public static HttpResponse openHttpUrl(URL url, CancellationSignal cancellationSignal)
+            throws IOException {
+        WeatherHttpClient client = WeatherHttpClient.getInstance();
+        return client.execute(client.open(url), cancellationSignal);
+    }
+
+    /**
+     * Same as {@link #openHttpUrl(URL, CancellationSignal)}, but sends the validators of the last stored response
+     * for this URL along with the request. If the data on the server hasn't changed since, the
+     * returned response is a 304 (see {@link HttpResponse#isNotModified()}) without a body.
+     *
+     * @param context            Used to access the validators saved with {@link HttpValidators}
+     * @param url                The URL to fetch the HTTP response from.
+     * @param cancellationSignal Aborts the request when cancelled, may be null
+     * @return The response, with its status line and headers already read
+     * @throws IOException Related to network
+     */
+    public static HttpResponse openConditionalHttpUrl(Context context, URL url,
+                                                      CancellationSignal cancellationSignal)
+            throws IOException {
+        WeatherHttpClient client = WeatherHttpClient.getInstance();
+        HttpURLConnection urlConnection = client.open(url);
+        HttpValidators.applyTo(context, urlConnection);
+        return client.execute(urlConnection, cancellationSignal);
+    }
+
+    /**
+     * Fetches the forecast at the given URL. If the same URL was fetched less than the freshness
+     * TTL of the {@link HttpDiskCache} ago, the response is served from disk without touching the
+     * network. Otherwise the request goes to the server, and the body of a 200 OK response is
+     * copied into the cache as it's read; call {@link HttpResponse#complete()} once the body
+     * turned out to be valid to commit it.
+     *
+     * @param context            Used to access the cache and the saved validators
+     * @param url                The forecast URL to fetch the HTTP response from.
+     * @param conditional        Whether to send the validators of the last stored response, see
+     *                           {@link #openConditionalHttpUrl(Context, URL, CancellationSignal)}
+     * @param cancellationSignal Aborts the request when cancelled, may be null
+     * @return The response, with its status line and headers already read
+     * @throws IOException Related to network
+     */
+    public static HttpResponse openForecastUrl(Context context, URL url, boolean conditional,
+                                               CancellationSignal cancellationSignal)
+            throws IOException {
+        HttpDiskCache cache = HttpDiskCache.getInstance(context);
+
+        HttpResponse response = cache.get(url);
+        if (response != null) {
+            Log.d(TAG, "Serving " + url + " from the cache");
+            return response;
+        }
+
+        response = conditional
+                ? openConditionalHttpUrl(context, url, cancellationSignal)
+                : openHttpUrl(url, cancellationSignal);
+        if (response.getCode() == HttpURLConnection.HTTP_OK) cache.put(url, response);
+        return response;
+    }
+
     /**
      * This method returns the entire result from the HTTP response.
      *
      * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response.
+     * @return The contents of the HTTP response, or null if it's empty.
      * @throws IOException Related to network and stream reading
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        HttpResponse response = openHttpUrl(url);
         try {
-            InputStream in = urlConnection.getInputStream();
-
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
-
-            boolean hasInput = scanner.hasNext();
-            if (hasInput) {
-                return scanner.next();
-            } else {
-                return null;
-            }
+            return response.readBodyAsString();
         } finally {
-            urlConnection.disconnect();
+            response.close();
         }
     }
-}
\ No newline at end of file
+}
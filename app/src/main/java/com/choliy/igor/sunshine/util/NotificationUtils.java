@@ -43,8 +43,9 @@ public final class NotificationUtils {
     public static void notifyUserOfNewWeather(Context context) {
 
         /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(DateTimeUtils.normalizeDate(System.currentTimeMillis()));
+        String locationSetting = PreferencesUtils.getPreferredWeatherLocation(context);
+        Uri todaysWeatherUri = WeatherContract.WeatherEntry.buildWeatherUriWithLocationAndDate(
+                locationSetting, DateTimeUtils.normalizeDate(System.currentTimeMillis()));
 
         /*
          * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
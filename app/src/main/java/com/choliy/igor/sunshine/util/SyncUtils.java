@@ -3,19 +3,21 @@ package com.choliy.igor.sunshine.util;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
-import android.net.Uri;
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 
+import com.choliy.igor.sunshine.R;
 import com.choliy.igor.sunshine.data.WeatherContract;
 import com.choliy.igor.sunshine.sync.FirebaseJobService;
+import com.choliy.igor.sunshine.sync.RetryPolicy;
 import com.choliy.igor.sunshine.sync.SyncIntentService;
+import com.choliy.igor.sunshine.sync.SyncScheduler;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
 import com.firebase.jobdispatcher.FirebaseJobDispatcher;
 import com.firebase.jobdispatcher.GooglePlayDriver;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.RetryStrategy;
 import com.firebase.jobdispatcher.Trigger;
 
 import java.util.concurrent.TimeUnit;
@@ -23,23 +25,32 @@ import java.util.concurrent.TimeUnit;
 public final class SyncUtils {
 
     /*
-     * Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
-     * writing out a bunch of multiplication ourselves and risk making a silly mistake.
+     * The interval at which to sync with the weather is decided by the SyncScheduler. The
+     * dispatcher may run the sync up to a third of the interval later than that.
      */
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    private static final int SYNC_FLEXTIME_DIVISOR = 3;
 
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
+    private static final String SUNSHINE_RETRY_SYNC_TAG = "sunshine-sync-retry";
+    private static final String SUNSHINE_PREFETCH_SYNC_TAG = "sunshine-sync-prefetch";
+
+    /* How much later than its backoff the dispatcher may run a retry */
+    private static final int RETRY_FLEXTIME_SECONDS = 30;
+
+    /* How much later than planned the dispatcher may run a pre-fetch */
+    private static final int PREFETCH_FLEXTIME_SECONDS = (int) TimeUnit.MINUTES.toSeconds(10);
     private static boolean sInitialized;
 
     /**
-     * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
+     * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher. Calling
+     * this again replaces the existing schedule.
      *
-     * @param context Context used to create the GooglePlayDriver that powers the
-     *                FirebaseJobDispatcher
+     * @param context         Context used to create the GooglePlayDriver that powers the
+     *                        FirebaseJobDispatcher
+     * @param intervalSeconds How often to sync, see {@link SyncScheduler}
      */
-    static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
+    public static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context,
+                                                         int intervalSeconds) {
 
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
@@ -67,20 +78,27 @@ public final class SyncUtils {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
+                 * We want the weather data to be synced every interval, give or take a third of
+                 * it (every 3 to 4 hours, by default). The first argument for
                  * Trigger's static executionWindow method is the start of the time frame when the
                  * sync should be performed. The second argument is the latest point in time at
                  * which the data should be synced. Please note that this end time is not
                  * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        intervalSeconds,
+                        intervalSeconds + intervalSeconds / SYNC_FLEXTIME_DIVISOR))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
                  */
                 .setReplaceCurrent(true)
+                /*
+                 * A sync that fails for a transient reason is retried by scheduleRetrySync, with
+                 * a randomized delay. The dispatcher's own backoff only applies to a job it
+                 * stopped itself.
+                 */
+                .setRetryStrategy(newSyncRetryStrategy(dispatcher))
                 /* Once the Job is ready, call the builder's build method to return the Job */
                 .build();
 
@@ -88,9 +106,80 @@ public final class SyncUtils {
         dispatcher.schedule(syncSunshineJob);
     }
 
+    /**
+     * Schedules a one-off sync to retry one that failed for a transient reason, be it the
+     * immediate sync of {@link #startImmediateSync(Context)} or a job. The delay grows with every
+     * retry in a row and is randomized, see {@link RetryPolicy}. Once the retries are used up,
+     * the periodic sync takes over again.
+     *
+     * @param context Context used to create the GooglePlayDriver that powers the
+     *                FirebaseJobDispatcher
+     */
+    public static void scheduleRetrySync(@NonNull final Context context) {
+        int backoffSeconds = RetryPolicy.nextBackoffSeconds(context);
+        if (backoffSeconds < 0) return;
+
+        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(new GooglePlayDriver(context));
+
+        Job retrySyncJob = dispatcher.newJobBuilder()
+                .setService(FirebaseJobService.class)
+                .setTag(SUNSHINE_RETRY_SYNC_TAG)
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                /* A retry is pointless after a reboot, the startup sync takes care of it */
+                .setLifetime(Lifetime.UNTIL_NEXT_BOOT)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow(
+                        backoffSeconds,
+                        backoffSeconds + RETRY_FLEXTIME_SECONDS))
+                /* A newer failure replaces the retry of an older one */
+                .setReplaceCurrent(true)
+                .setRetryStrategy(newSyncRetryStrategy(dispatcher))
+                .build();
+
+        dispatcher.schedule(retrySyncJob);
+    }
+
+    /**
+     * Schedules a one-off sync ahead of a time the user is expected to open the app, see
+     * {@link SyncScheduler}. A newer pre-fetch replaces an older one.
+     *
+     * @param context      Context used to create the GooglePlayDriver that powers the
+     *                     FirebaseJobDispatcher
+     * @param delaySeconds How long from now to pre-fetch
+     */
+    public static void schedulePrefetchSync(@NonNull final Context context, int delaySeconds) {
+        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(new GooglePlayDriver(context));
+
+        Job prefetchSyncJob = dispatcher.newJobBuilder()
+                .setService(FirebaseJobService.class)
+                .setTag(SUNSHINE_PREFETCH_SYNC_TAG)
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                /* The next app open schedules the next pre-fetch anyway */
+                .setLifetime(Lifetime.UNTIL_NEXT_BOOT)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow(
+                        delaySeconds,
+                        delaySeconds + PREFETCH_FLEXTIME_SECONDS))
+                .setReplaceCurrent(true)
+                .setRetryStrategy(newSyncRetryStrategy(dispatcher))
+                .build();
+
+        dispatcher.schedule(prefetchSyncJob);
+    }
+
+    private static RetryStrategy newSyncRetryStrategy(FirebaseJobDispatcher dispatcher) {
+        return dispatcher.newRetryStrategy(
+                RetryStrategy.RETRY_POLICY_EXPONENTIAL,
+                RetryPolicy.INITIAL_BACKOFF_SECONDS,
+                RetryPolicy.MAX_BACKOFF_SECONDS);
+    }
+
     /**
      * Creates periodic sync tasks and checks to see if an immediate sync is required. If an
      * immediate sync is required, this method will take care of making sure that sync occurs.
+     * <p>
+     * Whatever forecast is stored is shown right away either way; the immediate sync only
+     * refreshes it in the background when it's older than the stale forecast threshold.
      *
      * @param context Context that will be passed to other methods and used to access the
      *                ContentResolver
@@ -107,67 +196,68 @@ public final class SyncUtils {
          * This method call triggers Sunshine to create its task to synchronize weather data
          * periodically.
          */
-        scheduleFirebaseJobDispatcherSync(context);
+        scheduleFirebaseJobDispatcherSync(context, SyncScheduler.getSyncIntervalSeconds(context));
 
         /*
-         * We need to check to see if our ContentProvider has data to display in our forecast
-         * list. However, performing a query on the main thread is a bad idea as this may
-         * cause our UI to lag. Therefore, we create a thread in which we will run the query
-         * to check the contents of our ContentProvider.
+         * We need to check how old the forecast in our ContentProvider is. However, performing a
+         * query on the main thread is a bad idea as this may cause our UI to lag. Therefore, we
+         * run the query on the I/O pool. The user is waiting for this check, so it doesn't queue
+         * up behind a scheduled sync.
          */
-        new AsyncTask<Void, Void, Void>() {
+        AppExecutors.io().execute(AppExecutors.Priority.USER_VISIBLE, new Runnable() {
 
             @Override
-            public Void doInBackground(Void... voids) {
+            public void run() {
+                String locationSetting = PreferencesUtils.getPreferredWeatherLocation(context);
+                long lastSync = getLastSyncTime(context, locationSetting);
 
-                /* URI for every row of weather data in our weather table*/
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
+                long staleThresholdMillis = TimeUnit.MINUTES.toMillis(context.getResources()
+                        .getInteger(R.integer.stale_forecast_threshold_minutes));
+                long forecastAge = System.currentTimeMillis() - lastSync;
 
                 /*
-                 * Since this query is going to be used only as a check to see if we have any
-                 * data (rather than to display data), we just need to PROJECT the ID of each
-                 * row. In our queries where we display data, we need to PROJECT more columns
-                 * to determine what weather details need to be displayed.
+                 * A location that was never synced has a last sync time of 0, so it always counts
+                 * as stale. So does a forecast from the future, which means the clock was changed.
                  */
-                String[] projectionColumns = {WeatherContract.WeatherEntry._ID};
-                String selectionStatement = WeatherContract.WeatherEntry
-                        .getSqlSelectForTodayOnwards();
-
-                /* Here, we perform the query to check to see if we have any weather data */
-                Cursor cursor = context.getContentResolver().query(
-                        forecastQueryUri,
-                        projectionColumns,
-                        selectionStatement,
-                        null,
-                        null);
-                /*
-                 * A Cursor object can be null for various different reasons. A few are
-                 * listed below.
-                 *
-                 *   1) Invalid URI
-                 *   2) A certain ContentProvider's query method returns null
-                 *   3) A RemoteException was thrown.
-                 *
-                 * Bottom line, it is generally a good idea to check if a Cursor returned
-                 * from a ContentResolver is null.
-                 *
-                 * If the Cursor was null OR if it was empty, we need to sync immediately to
-                 * be able to display data to the user.
-                 */
-                if (null == cursor || cursor.getCount() == 0) {
+                if (forecastAge < 0 || forecastAge >= staleThresholdMillis) {
                     startImmediateSync(context);
                 }
-
-                /* Make sure to close the Cursor to avoid memory leaks! */
-                cursor.close();
-                return null;
             }
-        }.execute();
+        });
 
         /* If the method body is executed, set sInitialized to true */
         sInitialized = true;
     }
 
+    /**
+     * Looks up when the forecast of a location was last confirmed to be current. This is a
+     * single row lookup by the location setting, rather than a query over the forecast itself.
+     *
+     * @param context         Used to access the ContentResolver
+     * @param locationSetting The location setting to look up
+     * @return The time of the last sync in milliseconds, or 0 if the location was never synced
+     */
+    public static long getLastSyncTime(@NonNull Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.buildLocationUri(locationSetting),
+                new String[]{WeatherContract.LocationEntry.COLUMN_LAST_SYNC},
+                null,
+                null,
+                null);
+
+        /*
+         * A Cursor object can be null for various different reasons, e.g. when the
+         * ContentProvider's query method returns null. Either way, we know nothing about the
+         * location then.
+         */
+        if (cursor == null) return 0;
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Helper method to perform a sync immediately using an IntentService for asynchronous
      * execution.
@@ -0,0 +1,35 @@
+package com.choliy.igor.sunshine.util;
+
+import android.support.v4.os.TraceCompat;
+
+import com.choliy.igor.sunshine.BuildConfig;
+
+/**
+ * Named sections that show up in systrace and Perfetto, so the time of the main thread and the
+ * sync thread can be attributed to Sunshine's own code. Sections are only emitted when
+ * {@code BuildConfig.TRACE_ENABLED} is set, which it is for debug builds and for release builds
+ * made with {@code -PsunshineTrace}. Otherwise the flag is a compile time constant of false and
+ * the calls are compiled out.
+ * <p>
+ * Every {@link #beginSection(String)} must be matched by an {@link #endSection()} on the same
+ * thread, so sections are ended in a finally block.
+ */
+public final class TraceUtils {
+
+    private TraceUtils() {
+    }
+
+    /**
+     * @param sectionName The name the section shows up with, e.g. "SyncTask.parse"
+     */
+    public static void beginSection(String sectionName) {
+        if (BuildConfig.TRACE_ENABLED) TraceCompat.beginSection(sectionName);
+    }
+
+    /**
+     * Ends the section most recently begun on this thread.
+     */
+    public static void endSection() {
+        if (BuildConfig.TRACE_ENABLED) TraceCompat.endSection();
+    }
+}
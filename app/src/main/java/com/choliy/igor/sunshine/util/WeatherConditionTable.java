@@ -0,0 +1,252 @@
+package com.choliy.igor.sunshine.util;
+
+import com.choliy.igor.sunshine.R;
+
+/**
+ * Everything the app shows for an OpenWeatherMap weather condition ID: its name, its small and
+ * large artwork and how severe it is. The table is built once, when the class is loaded, as an
+ * array indexed by the ID, so a lookup is a single array access. It's the one place the IDs are
+ * mapped to resources; {@link WeatherUtils} reads from it.
+ * <p>
+ * See http://openweathermap.org/weather-conditions for a list of all IDs.
+ */
+public final class WeatherConditionTable {
+
+    /**
+     * How much the weather gets in the way of the user's day.
+     */
+    public enum Severity {
+        /* Clear skies, clouds, calm to fresh breezes */
+        NONE,
+        /* Drizzle, light rain or snow, mist and haze */
+        LOW,
+        /* Rain, snow, sleet, strong winds, extreme temperatures */
+        MODERATE,
+        /* Thunderstorms, extreme rain, gales, tornados, hurricanes and the like */
+        SEVERE
+    }
+
+    /* Every ID OpenWeatherMap uses is below this */
+    private static final int TABLE_SIZE = 1000;
+
+    /* What is shown for an ID that isn't in the table */
+    private static final Entry UNKNOWN = new Entry(0, R.drawable.ic_storm, R.drawable.art_storm,
+            Severity.NONE);
+
+    private static final Entry[] sEntries = buildEntries();
+
+    private WeatherConditionTable() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The entry of the weather condition, never null
+     */
+    public static Entry get(int weatherId) {
+        Entry entry = weatherId >= 0 && weatherId < TABLE_SIZE ? sEntries[weatherId] : null;
+        return entry != null ? entry : UNKNOWN;
+    }
+
+    /* Each known ID, or range of IDs, is declared exactly once: its name, small and large art
+     * and severity. An ID that isn't declared here is unknown. */
+    private static Entry[] buildEntries() {
+        Entry[] entries = new Entry[TABLE_SIZE];
+        /* Thunderstorm */
+        add(entries, 200, 232, R.string.condition_2xx,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+
+        /* Drizzle */
+        add(entries, 300, 321, R.string.condition_3xx,
+                R.drawable.ic_light_rain, R.drawable.art_light_rain, Severity.LOW);
+
+        /* Rain */
+        add(entries, 500, R.string.condition_500,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.LOW);
+        add(entries, 501, R.string.condition_501,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.MODERATE);
+        add(entries, 502, R.string.condition_502,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.MODERATE);
+        add(entries, 503, R.string.condition_503,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.SEVERE);
+        add(entries, 504, R.string.condition_504,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.SEVERE);
+        add(entries, 511, R.string.condition_511,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 520, R.string.condition_520,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.LOW);
+        add(entries, 521, R.string.condition_521,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.MODERATE);
+        add(entries, 522, R.string.condition_522,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.MODERATE);
+        add(entries, 531, R.string.condition_531,
+                R.drawable.ic_rain, R.drawable.art_rain, Severity.MODERATE);
+
+        /* Snow */
+        add(entries, 600, R.string.condition_600,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.LOW);
+        add(entries, 601, R.string.condition_601,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 602, R.string.condition_602,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 611, R.string.condition_611,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 612, R.string.condition_612,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 615, R.string.condition_615,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 616, R.string.condition_616,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 620, R.string.condition_620,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 621, R.string.condition_621,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+        add(entries, 622, R.string.condition_622,
+                R.drawable.ic_snow, R.drawable.art_snow, Severity.MODERATE);
+
+        /* Atmosphere */
+        add(entries, 701, R.string.condition_701,
+                R.drawable.ic_fog, R.drawable.art_fog, Severity.LOW);
+        add(entries, 711, R.string.condition_711,
+                R.drawable.ic_fog, R.drawable.art_fog, Severity.LOW);
+        add(entries, 721, R.string.condition_721,
+                R.drawable.ic_fog, R.drawable.art_fog, Severity.LOW);
+        add(entries, 731, R.string.condition_731,
+                R.drawable.ic_fog, R.drawable.art_fog, Severity.LOW);
+        add(entries, 741, R.string.condition_741,
+                R.drawable.ic_fog, R.drawable.art_fog, Severity.LOW);
+        add(entries, 751, R.string.condition_751,
+                R.drawable.ic_fog, R.drawable.art_fog, Severity.LOW);
+        add(entries, 761, R.string.condition_761,
+                R.drawable.ic_fog, R.drawable.art_fog, Severity.LOW);
+
+        /* Volcanic ash, squalls and tornado are drawn as storms */
+        add(entries, 762, R.string.condition_762,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 771, R.string.condition_771,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 781, R.string.condition_781,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+
+        /* Clear and clouds */
+        add(entries, 800, R.string.condition_800,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.NONE);
+        add(entries, 801, R.string.condition_801,
+                R.drawable.ic_light_clouds, R.drawable.art_light_clouds, Severity.NONE);
+        add(entries, 802, R.string.condition_802,
+                R.drawable.ic_cloudy, R.drawable.art_clouds, Severity.NONE);
+        add(entries, 803, R.string.condition_803,
+                R.drawable.ic_cloudy, R.drawable.art_clouds, Severity.NONE);
+        add(entries, 804, R.string.condition_804,
+                R.drawable.ic_cloudy, R.drawable.art_clouds, Severity.NONE);
+
+        /* Extreme */
+        add(entries, 900, R.string.condition_900,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 901, R.string.condition_901,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 902, R.string.condition_902,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 903, R.string.condition_903,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.MODERATE);
+        add(entries, 904, R.string.condition_904,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.MODERATE);
+        add(entries, 905, R.string.condition_905,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.MODERATE);
+        add(entries, 906, R.string.condition_906,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.MODERATE);
+
+        /* Calm to hurricane */
+        add(entries, 951, R.string.condition_951,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.NONE);
+        add(entries, 952, R.string.condition_952,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.NONE);
+        add(entries, 953, R.string.condition_953,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.NONE);
+        add(entries, 954, R.string.condition_954,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.NONE);
+        add(entries, 955, R.string.condition_955,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.NONE);
+        add(entries, 956, R.string.condition_956,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.MODERATE);
+        add(entries, 957, R.string.condition_957,
+                R.drawable.ic_clear, R.drawable.art_clear, Severity.MODERATE);
+        add(entries, 958, R.string.condition_958,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 959, R.string.condition_959,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 960, R.string.condition_960,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 961, R.string.condition_961,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        add(entries, 962, R.string.condition_962,
+                R.drawable.ic_storm, R.drawable.art_storm, Severity.SEVERE);
+        return entries;
+    }
+
+    private static void add(Entry[] entries, int weatherId, int stringResId,
+                            int smallArtResId, int largeArtResId, Severity severity) {
+        add(entries, weatherId, weatherId, stringResId, smallArtResId, largeArtResId, severity);
+    }
+
+    private static void add(Entry[] entries, int fromWeatherId, int toWeatherId, int stringResId,
+                            int smallArtResId, int largeArtResId, Severity severity) {
+        Entry entry = new Entry(stringResId, smallArtResId, largeArtResId, severity);
+        for (int weatherId = fromWeatherId; weatherId <= toWeatherId; weatherId++) {
+            if (entries[weatherId] != null) {
+                throw new IllegalStateException("Weather ID declared twice: " + weatherId);
+            }
+            entries[weatherId] = entry;
+        }
+    }
+
+    /**
+     * What the app shows for one weather condition ID.
+     */
+    public static final class Entry {
+
+        private final int mStringResId;
+        private final int mSmallArtResId;
+        private final int mLargeArtResId;
+        private final Severity mSeverity;
+
+        private Entry(int stringResId, int smallArtResId, int largeArtResId,
+                      Severity severity) {
+            mStringResId = stringResId;
+            mSmallArtResId = smallArtResId;
+            mLargeArtResId = largeArtResId;
+            mSeverity = severity;
+        }
+
+        /**
+         * @return The name of the condition, 0 if the ID isn't a known one
+         */
+        public int getStringResId() {
+            return mStringResId;
+        }
+
+        /**
+         * @return The icon used in the list item layout for a "future day"
+         */
+        public int getSmallArtResId() {
+            return mSmallArtResId;
+        }
+
+        /**
+         * @return The art used in the "today view" of the list and in the DetailActivity
+         */
+        public int getLargeArtResId() {
+            return mLargeArtResId;
+        }
+
+        /**
+         * @return false for the entry shown when the ID isn't in the table
+         */
+        public boolean isKnown() {
+            return this != UNKNOWN;
+        }
+
+        public Severity getSeverity() {
+            return mSeverity;
+        }
+    }
+}
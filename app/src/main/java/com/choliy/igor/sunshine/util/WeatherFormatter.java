@@ -0,0 +1,189 @@
+package com.choliy.igor.sunshine.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.v7.preference.PreferenceManager;
+import android.util.LruCache;
+
+import com.choliy.igor.sunshine.R;
+import com.choliy.igor.sunshine.core.WeatherMath;
+
+import java.util.Locale;
+
+/**
+ * Formats the values of a forecast for display, and remembers what it formatted. The same few
+ * dozen temperatures, wind speeds and conditions come up over and over while the forecast is
+ * scrolled or its days opened, so after the first time they cost a cache lookup instead of a
+ * preference read, a resource lookup and a String.format.
+ * <p>
+ * Values are cached as they are displayed, rounded to whole numbers the way the formats round
+ * them (half away from zero), and per unit system, which is kept in memory and updated by a
+ * preference listener. A change of locale empties the caches, since the format strings and the
+ * condition names are localized.
+ */
+public final class WeatherFormatter {
+
+    /* Enough for every temperature and wind speed a forecast is likely to show */
+    private static final int TEMPERATURE_CACHE_SIZE = 256;
+    private static final int WIND_CACHE_SIZE = 256;
+    private static final int CONDITION_CACHE_SIZE = 64;
+
+    /* A wind key holds the point of the compass, and NaN directions, in its lowest 4 bits */
+    private static final int WIND_DIRECTION_BITS = 4;
+
+    private static WeatherFormatter sInstance;
+
+    private final Context mContext;
+    private final String mUnitsKey;
+
+    private final LruCache<Integer, String> mMetricTemperatures =
+            new LruCache<>(TEMPERATURE_CACHE_SIZE);
+    private final LruCache<Integer, String> mImperialTemperatures =
+            new LruCache<>(TEMPERATURE_CACHE_SIZE);
+    private final LruCache<Integer, String> mMetricWinds = new LruCache<>(WIND_CACHE_SIZE);
+    private final LruCache<Integer, String> mImperialWinds = new LruCache<>(WIND_CACHE_SIZE);
+    private final LruCache<Integer, String> mConditions = new LruCache<>(CONDITION_CACHE_SIZE);
+
+    private volatile boolean mMetric;
+
+    /* The locale the cached strings were formatted in, and the format strings for it */
+    private volatile Locale mLocale;
+    private volatile String mTemperatureFormat;
+    private volatile String mWindKmhFormat;
+    private volatile String mWindMphFormat;
+
+    /* SharedPreferences only keeps a weak reference to its listeners */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mUnitsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                    if (mUnitsKey.equals(key)) mMetric = PreferencesUtils.isMetric(mContext);
+                }
+            };
+
+    private WeatherFormatter(Context context) {
+        mContext = context;
+        mUnitsKey = context.getString(R.string.pref_units_key);
+        mMetric = PreferencesUtils.isMetric(context);
+        loadFormats(Locale.getDefault());
+
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .registerOnSharedPreferenceChangeListener(mUnitsListener);
+    }
+
+    /**
+     * @param context Used to access resources and preferences, the application context is kept
+     * @return The formatter shared by the whole app
+     */
+    public static synchronized WeatherFormatter getInstance(Context context) {
+        if (sInstance == null) sInstance = new WeatherFormatter(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * @return true if the user prefers metric units, as of the last change of the preference
+     */
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * Formats a temperature in the units the user prefers, without decimals, e.g. "21°".
+     *
+     * @param temperature Temperature in degrees Celsius (°C)
+     * @return The formatted temperature
+     */
+    public String formatTemperature(double temperature) {
+        checkLocale();
+
+        boolean metric = mMetric;
+        if (!metric) temperature = WeatherMath.celsiusToFahrenheit(temperature);
+
+        int rounded = round(temperature);
+        LruCache<Integer, String> cache = metric ? mMetricTemperatures : mImperialTemperatures;
+        String formatted = cache.get(rounded);
+        if (formatted == null) {
+            formatted = String.format(mTemperatureFormat, (double) rounded);
+            cache.put(rounded, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * Formats a wind in the units the user prefers, e.g. "2 km/h SW".
+     *
+     * @param windSpeed Wind speed in kilometers / hour
+     * @param degrees   Degrees as measured on a compass, NOT temperature degrees!
+     * @return The formatted wind
+     */
+    public String formatWind(float windSpeed, float degrees) {
+        checkLocale();
+
+        boolean metric = mMetric;
+        double speed = metric ? windSpeed : WeatherMath.kphToMph(windSpeed);
+
+        int rounded = round(speed);
+        int point = WeatherMath.getCompassPoint(degrees);
+        int key = (rounded << WIND_DIRECTION_BITS) | (point + 1);
+
+        LruCache<Integer, String> cache = metric ? mMetricWinds : mImperialWinds;
+        String formatted = cache.get(key);
+        if (formatted == null) {
+            formatted = String.format(metric ? mWindKmhFormat : mWindMphFormat,
+                    (double) rounded, WeatherMath.getCompassDirection(degrees));
+            cache.put(key, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The name of the weather condition, see
+     * {@link WeatherUtils#getStringForWeatherCondition(Context, int)}
+     */
+    public String formatCondition(int weatherId) {
+        checkLocale();
+
+        String condition = mConditions.get(weatherId);
+        if (condition == null) {
+            int stringId = WeatherConditionTable.get(weatherId).getStringResId();
+            condition = stringId != 0
+                    ? mContext.getString(stringId)
+                    : mContext.getString(R.string.condition_unknown, weatherId);
+            mConditions.put(weatherId, condition);
+        }
+        return condition;
+    }
+
+    /**
+     * Empties the caches if the locale changed since they were filled.
+     */
+    private void checkLocale() {
+        Locale locale = Locale.getDefault();
+        if (locale.equals(mLocale)) return;
+
+        synchronized (this) {
+            if (locale.equals(mLocale)) return;
+            mMetricTemperatures.evictAll();
+            mImperialTemperatures.evictAll();
+            mMetricWinds.evictAll();
+            mImperialWinds.evictAll();
+            mConditions.evictAll();
+            loadFormats(locale);
+        }
+    }
+
+    private void loadFormats(Locale locale) {
+        mTemperatureFormat = mContext.getString(R.string.format_temperature);
+        mWindKmhFormat = mContext.getString(R.string.format_wind_kmh);
+        mWindMphFormat = mContext.getString(R.string.format_wind_mph);
+        mLocale = locale;
+    }
+
+    /**
+     * Rounds to a whole number the way the %.0f format does, half away from zero.
+     */
+    private static int round(double value) {
+        return (int) (value < 0 ? -Math.floor(-value + 0.5) : Math.floor(value + 0.5));
+    }
+}
@@ -3,33 +3,26 @@ package com.choliy.igor.sunshine.util;
 import android.content.Context;
 import android.util.Log;
 
-import com.choliy.igor.sunshine.R;
+import com.choliy.igor.sunshine.core.WeatherMath;
 
 /**
  * Contains useful utilities for a weather app, such as conversion between Celsius and Fahrenheit,
  * from kph to mph, and from degrees to NSEW. It also contains the mapping of weather condition
- * codes in OpenWeatherMap to strings. These strings are contained
+ * codes in OpenWeatherMap to strings. These strings are contained in strings.xml. The conversions
+ * live in {@link WeatherMath} of the core module, and the condition codes are mapped to strings
+ * and artwork by the {@link WeatherConditionTable}.
  */
 public final class WeatherUtils {
 
     private static final String TAG = WeatherUtils.class.getSimpleName();
 
-    /**
-     * This method will convert a temperature from Celsius to Fahrenheit.
-     *
-     * @param temperatureInCelsius Temperature in degrees Celsius(°C)
-     * @return Temperature in degrees Fahrenheit (°F)
-     */
-    private static double celsiusToFahrenheit(double temperatureInCelsius) {
-        double temperatureInFahrenheit = (temperatureInCelsius * 1.8) + 32;
-        return temperatureInFahrenheit;
-    }
-
     /**
      * Temperature data is stored in Celsius by our app. Depending on the user's preference,
      * the app may need to display the temperature in Fahrenheit. This method will perform that
      * temperature conversion if necessary. It will also format the temperature so that no
      * decimal points show. Temperatures will be formatted to the following form: "21°C"
+     * <p>
+     * Formatted temperatures are cached by the {@link WeatherFormatter}.
      *
      * @param context     Android Context to access preferences and resources
      * @param temperature Temperature in degrees Celsius (°C)
@@ -37,18 +30,14 @@ public final class WeatherUtils {
      * "21°C"
      */
     public static String formatTemperature(Context context, double temperature) {
-        if (!PreferencesUtils.isMetric(context)) {
-            temperature = celsiusToFahrenheit(temperature);
-        }
-        int temperatureFormatResourceId = R.string.format_temperature;
-
-        /* For presentation, assume the user doesn't care about tenths of a degree */
-        return String.format(context.getString(temperatureFormatResourceId), temperature);
+        return WeatherFormatter.getInstance(context).formatTemperature(temperature);
     }
 
     /**
      * This method uses the wind direction in degrees to determine compass direction as a
      * String. (eg NW) The method will return the wind String in the following form: "2 km/h SW"
+     * <p>
+     * Formatted winds are cached by the {@link WeatherFormatter}.
      *
      * @param context   Android Context to access preferences and resources
      * @param windSpeed Wind speed in kilometers / hour
@@ -57,215 +46,22 @@ public final class WeatherUtils {
      * @return Wind String in the following form: "2 km/h SW"
      */
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
-
-        int windFormat = R.string.format_wind_kmh;
-
-        if (!PreferencesUtils.isMetric(context)) {
-            windFormat = R.string.format_wind_mph;
-            windSpeed = .621371192237334f * windSpeed;
-        }
-
-        /*
-         * You know what's fun, writing really long if/else statements with tons of possible
-         * conditions. Seriously, try it!
-         */
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
-        }
-        return String.format(context.getString(windFormat), windSpeed, direction);
+        return WeatherFormatter.getInstance(context).formatWind(windSpeed, degrees);
     }
 
     /**
      * Helper method to provide the String according to the weather
-     * condition id returned by the OpenWeatherMap call.
+     * condition id returned by the OpenWeatherMap call. The strings are cached by the
+     * {@link WeatherFormatter}.
      *
      * @param context   Android context
      * @param weatherId from OpenWeatherMap API response
      *                  http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-     * @return String for the weather condition, null if no relation is found.
+     * @return String for the weather condition, or a generic one naming the ID if no relation is
+     * found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
-        }
-        return context.getString(stringId);
+        return WeatherFormatter.getInstance(context).formatCondition(weatherId);
     }
 
     /**
@@ -279,43 +75,12 @@ public final class WeatherUtils {
      *
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
-     * @return resource id for the corresponding icon. -1 if no relation is found.
+     * @return resource id for the corresponding icon, the storm icon if no relation is found.
      */
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
-
-        /* Based on weather code data for Open Weather Map */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.ic_clear;
-        }
-
-        Log.e(TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.ic_storm;
+        WeatherConditionTable.Entry entry = WeatherConditionTable.get(weatherId);
+        if (!entry.isKnown()) Log.e(TAG, "Unknown Weather: " + weatherId);
+        return entry.getSmallArtResId();
     }
 
     /**
@@ -329,42 +94,11 @@ public final class WeatherUtils {
      *
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
-     * @return resource ID for the corresponding icon. -1 if no relation is found.
+     * @return resource ID for the corresponding icon, the storm art if no relation is found.
      */
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
-
-        /* Based on weather code data for Open Weather Map */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
-        }
-
-        Log.e(TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.art_storm;
+        WeatherConditionTable.Entry entry = WeatherConditionTable.get(weatherId);
+        if (!entry.isKnown()) Log.e(TAG, "Unknown Weather: " + weatherId);
+        return entry.getLargeArtResId();
     }
-}
\ No newline at end of file
+}
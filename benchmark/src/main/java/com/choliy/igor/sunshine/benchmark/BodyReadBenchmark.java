@@ -0,0 +1,90 @@
+package com.choliy.igor.sunshine.benchmark;
+
+import com.choliy.igor.sunshine.fakeserver.SyntheticForecasts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two ways the app has read a whole response body into a String: the original
+ * java.util.Scanner with a "\\A" delimiter, and what HttpResponse.readBodyAsString does now,
+ * copying through a reused buffer into a byte array sized from the Content-Length up front and
+ * decoding that in place. HttpResponse needs Android, so its read loop is mirrored here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class BodyReadBenchmark {
+
+    /* Same as BufferPool.BUFFER_SIZE */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    @Param({"1", "14", "100", "1000"})
+    public int days;
+
+    private byte[] mBody;
+    private byte[] mBuffer;
+
+    @Setup
+    public void setUp() {
+        mBody = SyntheticForecasts.forecastJson(days).getBytes(SyntheticForecasts.UTF_8);
+        mBuffer = new byte[BUFFER_SIZE];
+    }
+
+    @Benchmark
+    public String scanner() {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(mBody));
+        try {
+            scanner.useDelimiter("\\A");
+            return scanner.hasNext() ? scanner.next() : null;
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Benchmark
+    public String pooledBuffer() throws IOException {
+        InputStream body = new ByteArrayInputStream(mBody);
+
+        /* The length the server sent in Content-Length */
+        BodyBuffer bodyBuffer = new BodyBuffer(mBody.length);
+        int read;
+        while ((read = body.read(mBuffer)) != -1) {
+            bodyBuffer.write(mBuffer, 0, read);
+        }
+        return bodyBuffer.decode();
+    }
+
+    /**
+     * Same as HttpResponse.BodyBuffer, decodes its contents without copying them first.
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        String decode() {
+            return new String(buf, 0, count, SyntheticForecasts.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.choliy.igor.sunshine.benchmark;
+
+import com.choliy.igor.sunshine.core.CancellationCheck;
+import com.choliy.igor.sunshine.core.Clock;
+import com.choliy.igor.sunshine.core.ForecastParser;
+import com.choliy.igor.sunshine.core.ForecastResponse;
+import com.choliy.igor.sunshine.core.OwmForecastParser;
+import com.choliy.igor.sunshine.fakeserver.SyntheticForecasts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Measures the whole path the sync takes from the bytes of a response body to a forecast:
+ * gunzipping if the server compressed the body, decoding UTF-8 and parsing, on the same payloads
+ * as {@link ForecastParserBenchmark}. Storing the forecast needs SQLite on a device, so it's not
+ * covered here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ForecastIngestBenchmark {
+
+    @Param({"1", "14", "100", "1000"})
+    public int days;
+
+    @Param({"false", "true"})
+    public boolean gzipped;
+
+    private final ForecastParser mParser = new OwmForecastParser(Clock.SYSTEM);
+
+    private byte[] mBody;
+
+    @Setup
+    public void setUp() {
+        byte[] utf8 = SyntheticForecasts.forecastJson(days).getBytes(SyntheticForecasts.UTF_8);
+        mBody = gzipped ? SyntheticForecasts.gzip(utf8) : utf8;
+    }
+
+    @Benchmark
+    public ForecastResponse ingest() throws IOException {
+        InputStream body = new ByteArrayInputStream(mBody);
+        if (gzipped) body = new GZIPInputStream(body, 8 * 1024);
+        return mParser.parse(new InputStreamReader(body, SyntheticForecasts.UTF_8),
+                CancellationCheck.NONE);
+    }
+}
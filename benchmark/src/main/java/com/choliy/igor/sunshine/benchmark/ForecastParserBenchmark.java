@@ -0,0 +1,59 @@
+package com.choliy.igor.sunshine.benchmark;
+
+import com.choliy.igor.sunshine.core.CancellationCheck;
+import com.choliy.igor.sunshine.core.Clock;
+import com.choliy.igor.sunshine.core.ForecastParser;
+import com.choliy.igor.sunshine.core.ForecastResponse;
+import com.choliy.igor.sunshine.core.OwmForecastParser;
+import com.choliy.igor.sunshine.fakeserver.SyntheticForecasts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the forecast parser, the code behind JsonUtils.getForecastFromJson, on responses of
+ * 1, 14 (what the app asks for), 100 and 1,000 days. Throughput mode gives operations per
+ * second, sample mode gives the latency percentiles, and the gc profiler of the jmh task adds
+ * the allocation rate.
+ * <p>
+ * The JSON is read from a String, so only the parser is measured; see
+ * {@link ForecastIngestBenchmark} for the whole path from the bytes of the response body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ForecastParserBenchmark {
+
+    @Param({"1", "14", "100", "1000"})
+    public int days;
+
+    private final ForecastParser mParser = new OwmForecastParser(Clock.SYSTEM);
+
+    private String mJson;
+
+    @Setup
+    public void setUp() {
+        mJson = SyntheticForecasts.forecastJson(days);
+    }
+
+    @Benchmark
+    public ForecastResponse parse() throws IOException {
+        return mParser.parse(new StringReader(mJson), CancellationCheck.NONE);
+    }
+}
@@ -0,0 +1,23 @@
+package com.choliy.igor.sunshine.core;
+
+/**
+ * Lets long running work, such as parsing a forecast, find out that nobody wants its result
+ * anymore. On Android it's backed by a CancellationSignal.
+ */
+public interface CancellationCheck {
+
+    /**
+     * A check for work that can't be cancelled.
+     */
+    CancellationCheck NONE = new CancellationCheck() {
+        @Override
+        public void throwIfCanceled() {
+        }
+    };
+
+    /**
+     * Stops the work by throwing an unchecked exception of the implementation's choice if it was
+     * cancelled, returns normally otherwise.
+     */
+    void throwIfCanceled();
+}
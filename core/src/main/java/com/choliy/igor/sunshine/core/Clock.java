@@ -0,0 +1,35 @@
+package com.choliy.igor.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * Where and when "now" is. The forecast is dated relative to today in the user's time zone, so
+ * code that depends on either takes a Clock, which tests and benchmarks can pin down.
+ */
+public interface Clock {
+
+    /**
+     * The device's clock and time zone.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public TimeZone getTimeZone() {
+            return TimeZone.getDefault();
+        }
+    };
+
+    /**
+     * @return The current time in milliseconds since the epoch, UTC
+     */
+    long currentTimeMillis();
+
+    /**
+     * @return The time zone the user is in
+     */
+    TimeZone getTimeZone();
+}
@@ -0,0 +1,204 @@
+package com.choliy.igor.sunshine.core;
+
+import java.util.Arrays;
+
+/**
+ * A day-by-day weather forecast held in parallel primitive arrays, one slot per day. This is what
+ * the JSON parser fills in, without boxing any value or building a map per day. The app hands the
+ * arrays themselves to the WeatherProvider, which wraps them in a batch of its own again, so the
+ * forecast is stored without being boxed or copied on the way.
+ */
+public final class ForecastBatch {
+
+    /* Enough for the 14 day forecast we ask for, the arrays grow if the server sends more */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ForecastBatch(int capacity) {
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    /**
+     * Wraps arrays that already hold a forecast, one slot per day, without copying them. The
+     * batch holds as many days as the arrays are long. The arrays mustn't be changed afterwards;
+     * adding a day to the batch copies them first.
+     *
+     * @throws IllegalArgumentException If an array is missing or the arrays differ in length
+     */
+    public ForecastBatch(long[] dates, int[] weatherIds, double[] minTemps, double[] maxTemps,
+                         double[] humidities, double[] pressures, double[] windSpeeds,
+                         double[] degrees) {
+        if (dates == null || weatherIds == null || minTemps == null || maxTemps == null
+                || humidities == null || pressures == null || windSpeeds == null
+                || degrees == null) {
+            throw new IllegalArgumentException("Forecast is missing a column");
+        }
+
+        int size = dates.length;
+        if (weatherIds.length != size || minTemps.length != size || maxTemps.length != size
+                || humidities.length != size || pressures.length != size
+                || windSpeeds.length != size || degrees.length != size) {
+            throw new IllegalArgumentException("Forecast columns differ in length");
+        }
+
+        mSize = size;
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mMinTemps = minTemps;
+        mMaxTemps = maxTemps;
+        mHumidities = humidities;
+        mPressures = pressures;
+        mWindSpeeds = windSpeeds;
+        mDegrees = degrees;
+    }
+
+    /**
+     * Appends one day to the end of the forecast.
+     *
+     * @param date      Normalized UTC date in milliseconds
+     * @param weatherId Weather ID as returned by the API
+     * @param minTemp   Min temperature in °C
+     * @param maxTemp   Max temperature in °C
+     * @param humidity  Humidity in percent
+     * @param pressure  Pressure in hPa
+     * @param windSpeed Wind speed
+     * @param degrees   Wind direction in meteorological degrees
+     */
+    public void add(long date, int weatherId, double minTemp, double maxTemp,
+                    double humidity, double pressure, double windSpeed, double degrees) {
+        if (mSize == mDates.length) grow();
+
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getDate(int day) {
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public double getMinTemp(int day) {
+        return mMinTemps[day];
+    }
+
+    public double getMaxTemp(int day) {
+        return mMaxTemps[day];
+    }
+
+    public double getHumidity(int day) {
+        return mHumidities[day];
+    }
+
+    public double getPressure(int day) {
+        return mPressures[day];
+    }
+
+    public double getWindSpeed(int day) {
+        return mWindSpeeds[day];
+    }
+
+    public double getDegrees(int day) {
+        return mDegrees[day];
+    }
+
+    /*
+     * The getters of whole columns below return the backing arrays, trimmed to the size of the
+     * batch so they hold exactly its days. The arrays mustn't be changed.
+     */
+
+    public long[] getDateArray() {
+        trimToSize();
+        return mDates;
+    }
+
+    public int[] getWeatherIdArray() {
+        trimToSize();
+        return mWeatherIds;
+    }
+
+    public double[] getMinTempArray() {
+        trimToSize();
+        return mMinTemps;
+    }
+
+    public double[] getMaxTempArray() {
+        trimToSize();
+        return mMaxTemps;
+    }
+
+    public double[] getHumidityArray() {
+        trimToSize();
+        return mHumidities;
+    }
+
+    public double[] getPressureArray() {
+        trimToSize();
+        return mPressures;
+    }
+
+    public double[] getWindSpeedArray() {
+        trimToSize();
+        return mWindSpeeds;
+    }
+
+    public double[] getDegreesArray() {
+        trimToSize();
+        return mDegrees;
+    }
+
+    private void grow() {
+        resize(Math.max(DEFAULT_CAPACITY, mDates.length * 2));
+    }
+
+    /**
+     * Shrinks the arrays to the number of days, the first time a whole column is asked for.
+     */
+    private void trimToSize() {
+        if (mDates.length != mSize) resize(mSize);
+    }
+
+    private void resize(int capacity) {
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+}
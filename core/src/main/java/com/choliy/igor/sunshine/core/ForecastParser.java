@@ -0,0 +1,21 @@
+package com.choliy.igor.sunshine.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Turns the body of a forecast response into a {@link ForecastResponse}.
+ */
+public interface ForecastParser {
+
+    /**
+     * Parses the given response body. The reader is read to the end and closed.
+     *
+     * @param forecastReader     The response body, already decoded with its charset
+     * @param cancellationCheck  Checked regularly during the parse
+     * @return What the server answered, either a forecast or an error code
+     * @throws IOException If the body can't be read, isn't valid JSON or lacks a forecast
+     */
+    ForecastResponse parse(Reader forecastReader, CancellationCheck cancellationCheck)
+            throws IOException;
+}
@@ -0,0 +1,72 @@
+package com.choliy.igor.sunshine.core;
+
+import java.net.HttpURLConnection;
+
+/**
+ * What a weather server answered to a forecast request: either a forecast and the coordinates of
+ * the city it's for, or an error code.
+ */
+public final class ForecastResponse {
+
+    private final int mCode;
+    private final ForecastBatch mForecast;
+    private final double mCityLatitude;
+    private final double mCityLongitude;
+
+    /**
+     * @param forecast      The forecast, one entry per day
+     * @param cityLatitude  Latitude of the city the forecast is for
+     * @param cityLongitude Longitude of the city the forecast is for
+     * @return A successful response
+     */
+    public static ForecastResponse ofForecast(ForecastBatch forecast,
+                                              double cityLatitude, double cityLongitude) {
+        return new ForecastResponse(HttpURLConnection.HTTP_OK,
+                forecast, cityLatitude, cityLongitude);
+    }
+
+    /**
+     * @param code The error code the server sent in the body, e.g. 404 for an unknown location
+     * @return A response without a forecast
+     */
+    public static ForecastResponse ofError(int code) {
+        return new ForecastResponse(code, null, 0, 0);
+    }
+
+    private ForecastResponse(int code, ForecastBatch forecast,
+                             double cityLatitude, double cityLongitude) {
+        mCode = code;
+        mForecast = forecast;
+        mCityLatitude = cityLatitude;
+        mCityLongitude = cityLongitude;
+    }
+
+    /**
+     * @return true if the response holds a forecast, false if the server sent an error code
+     */
+    public boolean isSuccessful() {
+        return mCode == HttpURLConnection.HTTP_OK;
+    }
+
+    /**
+     * @return The code the server sent in the body, 200 for a successful response
+     */
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return The forecast, or null if the server sent an error code
+     */
+    public ForecastBatch getForecast() {
+        return mForecast;
+    }
+
+    public double getCityLatitude() {
+        return mCityLatitude;
+    }
+
+    public double getCityLongitude() {
+        return mCityLongitude;
+    }
+}
@@ -0,0 +1,297 @@
+package com.choliy.igor.sunshine.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * Parses OpenWeatherMap's daily forecast JSON straight from the response stream, one token at a
+ * time. Neither the response body nor a JSON tree is ever held in memory, the values go directly
+ * into the primitive arrays of a {@link ForecastBatch}.
+ */
+public final class OwmForecastParser implements ForecastParser {
+
+    /* Location information */
+    private static final String OWM_CITY = "city";
+    private static final String OWM_COORD = "coord";
+
+    /* Location coordinate */
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    /* Weather information. Each day's forecast info is an element of the "list" array */
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WIND_SPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    /* All temperatures are children of the "temp" object */
+    private static final String OWM_TEMPERATURE = "temp";
+
+    /* Max temperature for the day */
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /*
+     * Flags for the values every day of the forecast must have. The streaming parser sees the
+     * fields in whatever order the server sends them, so it keeps track of which ones it has seen.
+     */
+    private static final int FIELD_PRESSURE = 1;
+    private static final int FIELD_HUMIDITY = 1 << 1;
+    private static final int FIELD_WIND_SPEED = 1 << 2;
+    private static final int FIELD_WIND_DIRECTION = 1 << 3;
+    private static final int FIELD_MAX = 1 << 4;
+    private static final int FIELD_MIN = 1 << 5;
+    private static final int FIELD_WEATHER_ID = 1 << 6;
+    private static final int FIELD_ALL = (1 << 7) - 1;
+
+    private final Clock mClock;
+
+    /**
+     * @param clock Decides which day the first day of the forecast is
+     */
+    public OwmForecastParser(Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws MalformedJsonException If the server answered with a success code but the forecast
+     *                                or the coordinates of the city are missing
+     */
+    @Override
+    public ForecastResponse parse(Reader forecastReader, CancellationCheck cancellationCheck)
+            throws IOException {
+
+        JsonReader reader = new JsonReader(forecastReader);
+
+        ForecastBatch forecast = null;
+        int code = HttpURLConnection.HTTP_OK;
+        double cityLatitude = 0;
+        double cityLongitude = 0;
+        boolean hasCityCoord = false;
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case OWM_MESSAGE_CODE:
+                        code = reader.nextInt();
+                        break;
+                    case OWM_LIST:
+                        forecast = readForecastList(reader, cancellationCheck);
+                        break;
+                    case OWM_CITY:
+                        double[] cityCoord = readCityCoord(reader);
+                        if (cityCoord != null) {
+                            cityLatitude = cityCoord[0];
+                            cityLongitude = cityCoord[1];
+                            hasCityCoord = true;
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+
+        if (code != HttpURLConnection.HTTP_OK) return ForecastResponse.ofError(code);
+
+        if (forecast == null || !hasCityCoord) {
+            throw new MalformedJsonException("Forecast response without list or city coordinates");
+        }
+        return ForecastResponse.ofForecast(forecast, cityLatitude, cityLongitude);
+    }
+
+    /**
+     * Reads the "list" array of a forecast response.
+     *
+     * @param reader             Positioned at the start of the array
+     * @param cancellationCheck Checked before every day
+     * @return A forecast with one entry per element of the array
+     * @throws IOException If a day is missing a value or the JSON can't be parsed
+     */
+    private ForecastBatch readForecastList(JsonReader reader,
+                                           CancellationCheck cancellationCheck)
+            throws IOException {
+
+        ForecastBatch forecast = new ForecastBatch();
+
+        /*
+         * OWM returns daily forecasts based upon the local time of the city that is being asked
+         * for, which means that we need to know the GMT offset to translate this data properly.
+         * Since this data is also sent in-order and the first day is always the current day, we're
+         * going to take advantage of that to get a nice normalized UTC date for all of our weather.
+         */
+        long normalizedUtcStartDay = WeatherDates.getNormalizedUtcDateForToday(mClock);
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            cancellationCheck.throwIfCanceled();
+
+            double pressure = 0;
+            double humidity = 0;
+            double windSpeed = 0;
+            double windDirection = 0;
+
+            double maxTemp = 0;
+            double minTemp = 0;
+
+            int weatherId = 0;
+            int fields = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case OWM_PRESSURE:
+                        pressure = reader.nextDouble();
+                        fields |= FIELD_PRESSURE;
+                        break;
+                    case OWM_HUMIDITY:
+                        humidity = reader.nextInt();
+                        fields |= FIELD_HUMIDITY;
+                        break;
+                    case OWM_WIND_SPEED:
+                        windSpeed = reader.nextDouble();
+                        fields |= FIELD_WIND_SPEED;
+                        break;
+                    case OWM_WIND_DIRECTION:
+                        windDirection = reader.nextDouble();
+                        fields |= FIELD_WIND_DIRECTION;
+                        break;
+                    case OWM_WEATHER:
+                        /*
+                         * Description is in a child array called "weather", which is 1 element
+                         * long. That element also contains a weather code.
+                         */
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            if ((fields & FIELD_WEATHER_ID) != 0) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                                    weatherId = reader.nextInt();
+                                    fields |= FIELD_WEATHER_ID;
+                                } else {
+                                    reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                        }
+                        reader.endArray();
+                        break;
+                    case OWM_TEMPERATURE:
+                        /*
+                         * Temperatures are sent by Open Weather Map in a child object called
+                         * "temp".
+                         *
+                         * Editor's Note: Try not to name variables "temp" when working with
+                         * temperature. It confuses everybody. Temp could easily mean any number of
+                         * things, including temperature, temporary variable, temporary folder,
+                         * temporary employee, or many others, and is just a bad variable name.
+                         */
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case OWM_MAX:
+                                    maxTemp = reader.nextDouble();
+                                    fields |= FIELD_MAX;
+                                    break;
+                                case OWM_MIN:
+                                    minTemp = reader.nextDouble();
+                                    fields |= FIELD_MIN;
+                                    break;
+                                default:
+                                    reader.skipValue();
+                                    break;
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (fields != FIELD_ALL) {
+                throw new MalformedJsonException("Incomplete forecast for day " + forecast.size());
+            }
+
+            /*
+             * We ignore all the datetime values embedded in the JSON and assume that
+             * the values are returned in-order by day (which is not guaranteed to be correct).
+             */
+            long dateTimeMillis = normalizedUtcStartDay
+                    + WeatherDates.DAY_IN_MILLIS * forecast.size();
+
+            forecast.add(dateTimeMillis, weatherId, minTemp, maxTemp,
+                    humidity, pressure, windSpeed, windDirection);
+        }
+        reader.endArray();
+
+        return forecast;
+    }
+
+    /**
+     * Reads the coordinates out of the "city" object of a forecast response.
+     *
+     * @param reader Positioned at the start of the object
+     * @return The latitude and longitude of the city, or null if they are missing
+     * @throws IOException If the JSON can't be parsed
+     */
+    private static double[] readCityCoord(JsonReader reader) throws IOException {
+        double[] cityCoord = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (OWM_COORD.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                cityCoord = new double[2];
+                int coordinates = 0;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case OWM_LATITUDE:
+                            cityCoord[0] = reader.nextDouble();
+                            coordinates++;
+                            break;
+                        case OWM_LONGITUDE:
+                            cityCoord[1] = reader.nextDouble();
+                            coordinates++;
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+
+                if (coordinates != 2) cityCoord = null;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return cityCoord;
+    }
+}
@@ -0,0 +1,54 @@
+package com.choliy.igor.sunshine.core;
+
+/**
+ * The kinds of weather Sunshine has artwork for, which OpenWeatherMap's many weather condition
+ * IDs are grouped into. See http://openweathermap.org/weather-conditions for a list of all IDs.
+ */
+public enum WeatherCondition {
+    STORM,
+    LIGHT_RAIN,
+    RAIN,
+    SNOW,
+    FOG,
+    CLEAR,
+    LIGHT_CLOUDS,
+    CLOUDS;
+
+    /**
+     * @param weatherId Weather condition ID from the OpenWeatherMap API response
+     * @return The kind of weather the ID stands for, or null if it isn't a known ID
+     */
+    public static WeatherCondition forWeatherId(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return RAIN;
+        } else if (weatherId == 511) {
+            return SNOW;
+        } else if ((weatherId >= 520 && weatherId <= 522) || weatherId == 531) {
+            return RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            /* 761 (dust) has always been drawn as fog */
+            return FOG;
+        } else if (weatherId == 762 || weatherId == 771 || weatherId == 781) {
+            return STORM;
+        } else if (weatherId == 800) {
+            return CLEAR;
+        } else if (weatherId == 801) {
+            return LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CLOUDS;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return STORM;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return STORM;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return CLEAR;
+        }
+        return null;
+    }
+}
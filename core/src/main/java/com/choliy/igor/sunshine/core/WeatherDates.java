@@ -0,0 +1,78 @@
+package com.choliy.igor.sunshine.core;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date math for the forecast. Sunshine stores every day of the forecast as a "normalized" date:
+ * the midnight, in UTC, of the day's date in the user's time zone.
+ */
+public final class WeatherDates {
+
+    /* Milliseconds in a day */
+    public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private WeatherDates() {
+    }
+
+    /**
+     * Returns today's date in the time zone of the given clock, normalized to UTC midnight. For
+     * example, at 6:30 PM on September 20th, 2016 in California, it returns 1474329600000, which
+     * is September 20th, 2016 at midnight GMT.
+     *
+     * @param clock Where and when now is
+     * @return The normalized date of today
+     */
+    public static long getNormalizedUtcDateForToday(Clock clock) {
+        long utcNowMillis = clock.currentTimeMillis();
+        TimeZone timeZone = clock.getTimeZone();
+
+        /*
+         * The offset to add to UTC time to get local time, at the current instant so it accounts
+         * for daylight savings time
+         */
+        long timeSinceEpochLocalTimeMillis = utcNowMillis + timeZone.getOffset(utcNowMillis);
+
+        /* Converting to days drops the time of day, converting back gives midnight */
+        return normalizeDate(timeSinceEpochLocalTimeMillis);
+    }
+
+    /**
+     * Normalizes a date (in milliseconds) to the very beginning of its day in UTC time, e.g.
+     * 1474062315000 (9/16/2016, 17:45:15 GMT-4:00 DST) to 1473984000000 (9/16/2016, 00:00:00 GMT).
+     *
+     * @param date The date (in milliseconds) to normalize
+     * @return The UTC date at 12 midnight of the date
+     */
+    public static long normalizeDate(long date) {
+        return elapsedDaysSinceEpoch(date) * DAY_IN_MILLIS;
+    }
+
+    /**
+     * @param millisSinceEpoch Milliseconds since January 1, 1970 at midnight
+     * @return true if the date represents the beginning of a day in Unix time, false otherwise
+     */
+    public static boolean isDateNormalized(long millisSinceEpoch) {
+        return millisSinceEpoch % DAY_IN_MILLIS == 0;
+    }
+
+    /**
+     * @param utcDate A date in milliseconds in UTC time
+     * @return The number of days from the epoch to the date, disregarding any fractional day
+     */
+    public static long elapsedDaysSinceEpoch(long utcDate) {
+        return TimeUnit.MILLISECONDS.toDays(utcDate);
+    }
+
+    /**
+     * Turns a normalized date back into the local midnight of that date in the given time zone.
+     *
+     * @param normalizedUtcDate UTC time at midnight for a given date, as stored in the database
+     * @param timeZone          The time zone to get the local midnight in
+     * @return The local midnight of the date, in milliseconds since the epoch
+     */
+    public static long getLocalMidnightFromNormalizedUtcDate(long normalizedUtcDate,
+                                                             TimeZone timeZone) {
+        return normalizedUtcDate - timeZone.getOffset(normalizedUtcDate);
+    }
+}
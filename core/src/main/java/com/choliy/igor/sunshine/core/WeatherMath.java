@@ -0,0 +1,66 @@
+package com.choliy.igor.sunshine.core;
+
+/**
+ * Unit conversions for the values of a forecast. The forecast is stored in metric units, and
+ * converted for display when the user prefers imperial ones.
+ */
+public final class WeatherMath {
+
+    /* Miles in a kilometer */
+    private static final double MILES_PER_KILOMETER = 0.621371192237334;
+
+    /* Compass directions, each covering 45 degrees centered on its bearing */
+    private static final String[] COMPASS_DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+    private static final double DEGREES_PER_DIRECTION = 360.0 / COMPASS_DIRECTIONS.length;
+
+    /* What to show for a direction that isn't a valid bearing, e.g. NaN */
+    public static final String UNKNOWN_DIRECTION = "Unknown";
+
+    private WeatherMath() {
+    }
+
+    /**
+     * @param temperatureInCelsius Temperature in degrees Celsius (°C)
+     * @return Temperature in degrees Fahrenheit (°F)
+     */
+    public static double celsiusToFahrenheit(double temperatureInCelsius) {
+        return (temperatureInCelsius * 1.8) + 32;
+    }
+
+    /**
+     * @param kilometersPerHour Speed in km/h
+     * @return Speed in mph
+     */
+    public static double kphToMph(double kilometersPerHour) {
+        return kilometersPerHour * MILES_PER_KILOMETER;
+    }
+
+    /**
+     * Rounds a wind direction to one of the 8 points of the compass. For example, anything from
+     * 337.5 up to (but not including) 22.5 degrees is "N".
+     *
+     * @param degrees Degrees as measured on a compass, NOT temperature degrees!
+     * @return The compass direction, e.g. "SW", or {@link #UNKNOWN_DIRECTION} for NaN
+     */
+    public static String getCompassDirection(double degrees) {
+        int point = getCompassPoint(degrees);
+        return point < 0 ? UNKNOWN_DIRECTION : COMPASS_DIRECTIONS[point];
+    }
+
+    /**
+     * Same as {@link #getCompassDirection(double)}, but returns the point of the compass as a
+     * number, which is handy as a key.
+     *
+     * @param degrees Degrees as measured on a compass
+     * @return 0 for N, 1 for NE and so on clockwise up to 7 for NW, or -1 for NaN
+     */
+    public static int getCompassPoint(double degrees) {
+        if (Double.isNaN(degrees)) return -1;
+
+        /* North straddles 0, and takes whatever lies outside of the circle as well */
+        double halfDirection = DEGREES_PER_DIRECTION / 2;
+        if (degrees >= 360 - halfDirection || degrees < halfDirection) return 0;
+
+        return (int) ((degrees + halfDirection) / DEGREES_PER_DIRECTION);
+    }
+}
@@ -0,0 +1,71 @@
+package com.choliy.igor.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ForecastBatchTest {
+
+    @Test
+    public void wrappedArrays_areReturnedAsTheyAre() {
+        long[] dates = {0, WeatherDates.DAY_IN_MILLIS};
+        int[] weatherIds = {500, 800};
+        double[] minTemps = {1, 2};
+        double[] maxTemps = {3, 4};
+        double[] humidities = {5, 6};
+        double[] pressures = {7, 8};
+        double[] windSpeeds = {9, 10};
+        double[] degrees = {11, 12};
+
+        ForecastBatch forecast = new ForecastBatch(dates, weatherIds, minTemps, maxTemps,
+                humidities, pressures, windSpeeds, degrees);
+
+        assertEquals(2, forecast.size());
+        assertEquals(800, forecast.getWeatherId(1));
+        assertSame(dates, forecast.getDateArray());
+        assertSame(weatherIds, forecast.getWeatherIdArray());
+        assertSame(minTemps, forecast.getMinTempArray());
+        assertSame(maxTemps, forecast.getMaxTempArray());
+        assertSame(humidities, forecast.getHumidityArray());
+        assertSame(pressures, forecast.getPressureArray());
+        assertSame(windSpeeds, forecast.getWindSpeedArray());
+        assertSame(degrees, forecast.getDegreesArray());
+    }
+
+    @Test
+    public void add_toWrappedArrays_leavesThemAlone() {
+        long[] dates = {0};
+        ForecastBatch forecast = new ForecastBatch(dates, new int[]{500}, new double[1],
+                new double[1], new double[1], new double[1], new double[1], new double[1]);
+
+        forecast.add(WeatherDates.DAY_IN_MILLIS, 800, 1, 2, 3, 4, 5, 6);
+
+        assertEquals(2, forecast.size());
+        assertArrayEquals(new long[]{0}, dates);
+        assertArrayEquals(new long[]{0, WeatherDates.DAY_IN_MILLIS}, forecast.getDateArray());
+    }
+
+    @Test
+    public void columnArrays_holdExactlyTheDays() {
+        ForecastBatch forecast = new ForecastBatch();
+        forecast.add(0, 500, 1, 2, 3, 4, 5, 6);
+
+        assertArrayEquals(new long[]{0}, forecast.getDateArray());
+        assertArrayEquals(new int[]{500}, forecast.getWeatherIdArray());
+        assertArrayEquals(new double[]{6}, forecast.getDegreesArray(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrap_columnsOfDifferentLengths_throws() {
+        new ForecastBatch(new long[2], new int[2], new double[2], new double[2], new double[2],
+                new double[2], new double[2], new double[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrap_missingColumn_throws() {
+        new ForecastBatch(new long[2], null, new double[2], new double[2], new double[2],
+                new double[2], new double[2], new double[2]);
+    }
+}
@@ -0,0 +1,176 @@
+package com.choliy.igor.sunshine.core;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OwmForecastParserTest {
+
+    /* September 20th, 2016 at 6:30 PM in California, which is already the 21st in UTC */
+    private static final long NOW_MILLIS = 1474421400000L;
+    private static final long TODAY_IN_CALIFORNIA = 1474329600000L;
+
+    private static final Clock CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return NOW_MILLIS;
+        }
+
+        @Override
+        public TimeZone getTimeZone() {
+            return TimeZone.getTimeZone("America/Los_Angeles");
+        }
+    };
+
+    private static final String CITY =
+            "\"city\":{\"name\":\"Kyiv\",\"coord\":{\"lat\":50.45,\"lon\":30.52}}";
+
+    private static final String DAY_1 = "{\"dt\":1474372800,"
+            + "\"temp\":{\"day\":20.5,\"min\":12.25,\"max\":21.75},"
+            + "\"pressure\":1016.5,\"humidity\":64,"
+            + "\"weather\":[{\"id\":500,\"main\":\"Rain\"},{\"id\":800,\"main\":\"Clear\"}],"
+            + "\"speed\":3.5,\"deg\":225}";
+
+    /* The same fields as the first day, in another order, with values the parser must skip */
+    private static final String DAY_2 = "{\"deg\":90,\"speed\":1.25,"
+            + "\"weather\":[{\"main\":\"Clouds\",\"id\":803}],"
+            + "\"humidity\":40,\"pressure\":1020,\"clouds\":75,"
+            + "\"temp\":{\"night\":9,\"max\":18,\"min\":8.5}}";
+
+    private final OwmForecastParser mParser = new OwmForecastParser(CLOCK);
+
+    @Test
+    public void parse_readsEveryDayFromTodayOnwards() throws IOException {
+        ForecastResponse response = parse("{\"cod\":\"200\"," + CITY
+                + ",\"list\":[" + DAY_1 + "," + DAY_2 + "]}");
+
+        assertTrue(response.isSuccessful());
+        assertEquals(50.45, response.getCityLatitude(), 0);
+        assertEquals(30.52, response.getCityLongitude(), 0);
+
+        ForecastBatch forecast = response.getForecast();
+        assertEquals(2, forecast.size());
+
+        assertEquals(TODAY_IN_CALIFORNIA, forecast.getDate(0));
+        assertEquals(500, forecast.getWeatherId(0));
+        assertEquals(12.25, forecast.getMinTemp(0), 0);
+        assertEquals(21.75, forecast.getMaxTemp(0), 0);
+        assertEquals(64, forecast.getHumidity(0), 0);
+        assertEquals(1016.5, forecast.getPressure(0), 0);
+        assertEquals(3.5, forecast.getWindSpeed(0), 0);
+        assertEquals(225, forecast.getDegrees(0), 0);
+
+        assertEquals(TODAY_IN_CALIFORNIA + WeatherDates.DAY_IN_MILLIS, forecast.getDate(1));
+        assertEquals(803, forecast.getWeatherId(1));
+        assertEquals(8.5, forecast.getMinTemp(1), 0);
+        assertEquals(18, forecast.getMaxTemp(1), 0);
+        assertEquals(40, forecast.getHumidity(1), 0);
+        assertEquals(1020, forecast.getPressure(1), 0);
+        assertEquals(1.25, forecast.getWindSpeed(1), 0);
+        assertEquals(90, forecast.getDegrees(1), 0);
+    }
+
+    @Test
+    public void parse_errorCode_returnsErrorWithoutForecast() throws IOException {
+        ForecastResponse response = parse("{\"cod\":\"404\",\"message\":\"city not found\"}");
+
+        assertFalse(response.isSuccessful());
+        assertEquals(404, response.getCode());
+        assertNull(response.getForecast());
+    }
+
+    @Test
+    public void parse_errorCode_winsOverTheForecast() throws IOException {
+        ForecastResponse response = parse("{" + CITY + ",\"list\":[" + DAY_1 + "],\"cod\":500}");
+
+        assertFalse(response.isSuccessful());
+        assertEquals(500, response.getCode());
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void parse_withoutList_throws() throws IOException {
+        parse("{\"cod\":\"200\"," + CITY + "}");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void parse_withoutCityCoordinates_throws() throws IOException {
+        parse("{\"cod\":\"200\",\"city\":{\"name\":\"Kyiv\",\"coord\":{\"lat\":50.45}},"
+                + "\"list\":[" + DAY_1 + "]}");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void parse_dayWithoutHumidity_throws() throws IOException {
+        parse("{" + CITY + ",\"list\":[" + DAY_1.replace("\"humidity\":64,", "") + "]}");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void parse_dayWithoutWeatherId_throws() throws IOException {
+        parse("{" + CITY + ",\"list\":[" + DAY_2.replace("\"id\":803", "\"icon\":\"04d\"") + "]}");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void parse_dayWithoutMinTemperature_throws() throws IOException {
+        parse("{" + CITY + ",\"list\":[" + DAY_1 + "," + DAY_2.replace(",\"min\":8.5", "")
+                + "]}");
+    }
+
+    @Test
+    public void parse_cancelled_stopsBeforeTheNextDay() throws IOException {
+        CountingCancellationCheck cancellationCheck = new CountingCancellationCheck(2);
+        try {
+            mParser.parse(new StringReader("{" + CITY + ",\"list\":["
+                    + DAY_1 + "," + DAY_2 + "," + DAY_1 + "]}"), cancellationCheck);
+            fail("A cancelled parse must not return a forecast");
+        } catch (CancelledException expected) {
+            /* Checked before the first and the second day, and the second check cancelled */
+            assertEquals(2, cancellationCheck.mChecks);
+        }
+    }
+
+    @Test
+    public void parse_notCancelled_checksBeforeEveryDay() throws IOException {
+        CountingCancellationCheck cancellationCheck =
+                new CountingCancellationCheck(Integer.MAX_VALUE);
+        mParser.parse(new StringReader("{" + CITY + ",\"list\":["
+                + DAY_1 + "," + DAY_2 + "," + DAY_1 + "]}"), cancellationCheck);
+
+        assertEquals(3, cancellationCheck.mChecks);
+    }
+
+    private ForecastResponse parse(String json) throws IOException {
+        return mParser.parse(new StringReader(json), CancellationCheck.NONE);
+    }
+
+    private static final class CancelledException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Cancels on the given check, counting from 1.
+     */
+    private static final class CountingCancellationCheck implements CancellationCheck {
+
+        private final int mCancelAt;
+        private int mChecks;
+
+        CountingCancellationCheck(int cancelAt) {
+            mCancelAt = cancelAt;
+        }
+
+        @Override
+        public void throwIfCanceled() {
+            if (++mChecks >= mCancelAt) throw new CancelledException();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.choliy.igor.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WeatherConditionTest {
+
+    @Test
+    public void forWeatherId_rangeBoundaries() {
+        assertNull(WeatherCondition.forWeatherId(199));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(200));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(232));
+        assertNull(WeatherCondition.forWeatherId(233));
+
+        assertEquals(WeatherCondition.LIGHT_RAIN, WeatherCondition.forWeatherId(300));
+        assertEquals(WeatherCondition.LIGHT_RAIN, WeatherCondition.forWeatherId(321));
+        assertNull(WeatherCondition.forWeatherId(322));
+
+        assertEquals(WeatherCondition.RAIN, WeatherCondition.forWeatherId(500));
+        assertEquals(WeatherCondition.RAIN, WeatherCondition.forWeatherId(504));
+        assertNull(WeatherCondition.forWeatherId(505));
+        assertEquals(WeatherCondition.SNOW, WeatherCondition.forWeatherId(511));
+        assertEquals(WeatherCondition.RAIN, WeatherCondition.forWeatherId(520));
+        assertEquals(WeatherCondition.RAIN, WeatherCondition.forWeatherId(522));
+        assertNull(WeatherCondition.forWeatherId(523));
+        assertEquals(WeatherCondition.RAIN, WeatherCondition.forWeatherId(531));
+
+        assertEquals(WeatherCondition.SNOW, WeatherCondition.forWeatherId(600));
+        assertEquals(WeatherCondition.SNOW, WeatherCondition.forWeatherId(622));
+        assertNull(WeatherCondition.forWeatherId(623));
+    }
+
+    @Test
+    public void forWeatherId_atmosphere() {
+        assertNull(WeatherCondition.forWeatherId(700));
+        assertEquals(WeatherCondition.FOG, WeatherCondition.forWeatherId(701));
+        assertEquals(WeatherCondition.FOG, WeatherCondition.forWeatherId(741));
+
+        /* Dust is the last ID drawn as fog, volcanic ash and what follows are storms */
+        assertEquals(WeatherCondition.FOG, WeatherCondition.forWeatherId(761));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(762));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(771));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(781));
+    }
+
+    @Test
+    public void forWeatherId_skiesAndExtremes() {
+        assertEquals(WeatherCondition.CLEAR, WeatherCondition.forWeatherId(800));
+        assertEquals(WeatherCondition.LIGHT_CLOUDS, WeatherCondition.forWeatherId(801));
+        assertEquals(WeatherCondition.CLOUDS, WeatherCondition.forWeatherId(802));
+        assertEquals(WeatherCondition.CLOUDS, WeatherCondition.forWeatherId(804));
+        assertNull(WeatherCondition.forWeatherId(805));
+
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(900));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(906));
+        assertNull(WeatherCondition.forWeatherId(907));
+        assertEquals(WeatherCondition.CLEAR, WeatherCondition.forWeatherId(951));
+        assertEquals(WeatherCondition.CLEAR, WeatherCondition.forWeatherId(957));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(958));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.forWeatherId(962));
+        assertNull(WeatherCondition.forWeatherId(963));
+    }
+
+    @Test
+    public void forWeatherId_unknownIds() {
+        assertNull(WeatherCondition.forWeatherId(-1));
+        assertNull(WeatherCondition.forWeatherId(0));
+        assertNull(WeatherCondition.forWeatherId(1000));
+    }
+}
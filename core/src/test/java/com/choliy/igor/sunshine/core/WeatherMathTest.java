@@ -0,0 +1,58 @@
+package com.choliy.igor.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WeatherMathTest {
+
+    @Test
+    public void getCompassPoint_northStraddlesZero() {
+        assertEquals(0, WeatherMath.getCompassPoint(0));
+        assertEquals(0, WeatherMath.getCompassPoint(22.4));
+        assertEquals(0, WeatherMath.getCompassPoint(337.5));
+        assertEquals(0, WeatherMath.getCompassPoint(359.9));
+    }
+
+    @Test
+    public void getCompassPoint_boundariesBelongToTheNextPoint() {
+        assertEquals(1, WeatherMath.getCompassPoint(22.5));
+        assertEquals(2, WeatherMath.getCompassPoint(67.5));
+        assertEquals(3, WeatherMath.getCompassPoint(112.5));
+        assertEquals(4, WeatherMath.getCompassPoint(157.5));
+        assertEquals(5, WeatherMath.getCompassPoint(202.5));
+        assertEquals(6, WeatherMath.getCompassPoint(247.5));
+        assertEquals(7, WeatherMath.getCompassPoint(292.5));
+        assertEquals(7, WeatherMath.getCompassPoint(337.4));
+    }
+
+    @Test
+    public void getCompassPoint_outsideOfTheCircleIsNorth() {
+        assertEquals(0, WeatherMath.getCompassPoint(360));
+        assertEquals(0, WeatherMath.getCompassPoint(400));
+        assertEquals(0, WeatherMath.getCompassPoint(-45));
+    }
+
+    @Test
+    public void getCompassPoint_nan() {
+        assertEquals(-1, WeatherMath.getCompassPoint(Double.NaN));
+    }
+
+    @Test
+    public void getCompassDirection_matchesThePoint() {
+        assertEquals("N", WeatherMath.getCompassDirection(337.5));
+        assertEquals("NE", WeatherMath.getCompassDirection(22.5));
+        assertEquals("SW", WeatherMath.getCompassDirection(225));
+        assertEquals("NW", WeatherMath.getCompassDirection(337.4));
+        assertEquals(WeatherMath.UNKNOWN_DIRECTION, WeatherMath.getCompassDirection(Double.NaN));
+    }
+
+    @Test
+    public void conversions() {
+        assertEquals(32, WeatherMath.celsiusToFahrenheit(0), 1e-9);
+        assertEquals(212, WeatherMath.celsiusToFahrenheit(100), 1e-9);
+        assertEquals(-40, WeatherMath.celsiusToFahrenheit(-40), 1e-9);
+        assertEquals(0, WeatherMath.kphToMph(0), 1e-9);
+        assertEquals(62.137, WeatherMath.kphToMph(100), 1e-3);
+    }
+}
@@ -0,0 +1,459 @@
+package com.choliy.igor.sunshine.fakeserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A weather server that runs on the loopback interface, so the sync can be exercised without a
+ * network. It answers GET requests to {@code /weather} the way the real forecast server does,
+ * with keep-alive connections, gzip, ETags and 304 Not Modified, and can be told to be slow,
+ * to fail, and how often its forecast changes.
+ * <p>
+ * The forecast is synthetic ({@link SyntheticForecasts}) with as many days as the request's
+ * {@code cnt} parameter asks for, unless a fixed number of days or a recorded response is set.
+ * All settings can be changed while the server is running.
+ */
+public final class FakeWeatherServer implements Closeable {
+
+    public static final String FORECAST_PATH = "/weather";
+
+    /* What the app asks for, used when a request doesn't say */
+    private static final int DEFAULT_DAYS = 14;
+
+    /* An idle keep-alive connection is closed after this long */
+    private static final int KEEP_ALIVE_TIMEOUT_MILLIS = 30 * 1000;
+
+    private static final String CHARSET_NAME = "ISO-8859-1";
+
+    private final Random mRandom = new Random();
+
+    private volatile long mMinLatencyMillis;
+    private volatile long mMaxLatencyMillis;
+    private volatile double mErrorRate;
+    private volatile int mErrorCode = 500;
+    private volatile double mChangeRate;
+    private volatile int mDays = -1;
+    private volatile boolean mConditionalRequestsSupported = true;
+    private volatile byte[] mRecordedBody;
+
+    /* Bumped whenever the forecast changes, it seeds the synthetic forecast */
+    private long mForecastSeed = SyntheticForecasts.DEFAULT_SEED;
+
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+    private final AtomicInteger mErrorCount = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private final Set<Socket> mConnections = Collections.synchronizedSet(new HashSet<Socket>());
+    private ServerSocket mServerSocket;
+
+    /**
+     * Runs the server on its own, e.g. on the development machine.
+     *
+     * @param args The port to listen on, 8080 if not given, and optionally a file holding a
+     *             recorded forecast response to serve instead of synthetic ones
+     * @throws IOException If the port can't be bound or the file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        FakeWeatherServer server = new FakeWeatherServer();
+        if (args.length > 1) server.setRecordedResponse(readFile(new File(args[1])));
+        server.start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        System.out.println("Serving forecasts at " + server.getBaseUrl());
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     *
+     * @throws IOException If no port can be bound
+     */
+    public void start() throws IOException {
+        start(0);
+    }
+
+    /**
+     * Starts listening on the given port of the loopback interface.
+     *
+     * @param port The port to listen on, 0 for any free one
+     * @throws IOException If the port can't be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        if (mServerSocket != null) throw new IllegalStateException("Already started");
+        mServerSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+
+        final ServerSocket serverSocket = mServerSocket;
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(serverSocket);
+            }
+        }, "fake-weather-server");
+        acceptThread.start();
+    }
+
+    /**
+     * @return The port the server listens on
+     */
+    public synchronized int getPort() {
+        if (mServerSocket == null) throw new IllegalStateException("Not started");
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * @return The base URL of the forecast, to build forecast requests upon
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort() + FORECAST_PATH;
+    }
+
+    /**
+     * Delays every response by a random time within the given bounds.
+     *
+     * @param minMillis The shortest delay
+     * @param maxMillis The longest delay
+     */
+    public void setLatency(long minMillis, long maxMillis) {
+        mMinLatencyMillis = minMillis;
+        mMaxLatencyMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Fails the given share of the requests.
+     *
+     * @param errorRate Between 0 and 1, e.g. 0.1 to fail every tenth request on average
+     * @param errorCode The status code failed requests are answered with, e.g. 503
+     */
+    public void setErrorRate(double errorRate, int errorCode) {
+        mErrorRate = errorRate;
+        mErrorCode = errorCode;
+    }
+
+    /**
+     * Decides how often the forecast changes. A request that finds the forecast unchanged can
+     * be answered with a 304 if it sends the ETag of the last response.
+     *
+     * @param changeRate Between 0 and 1, the chance that the forecast changed since the previous
+     *                   request; 0 never changes it, 1 changes it for every request
+     */
+    public void setChangeRate(double changeRate) {
+        mChangeRate = changeRate;
+    }
+
+    /**
+     * @param days How many days every forecast has, whatever the request asks for; -1 to follow
+     *             the request's cnt parameter
+     */
+    public void setDays(int days) {
+        mDays = days;
+    }
+
+    /**
+     * @param supported Whether to answer requests whose If-None-Match matches the current
+     *                  forecast with a 304, true by default
+     */
+    public void setConditionalRequestsSupported(boolean supported) {
+        mConditionalRequestsSupported = supported;
+    }
+
+    /**
+     * @param body A forecast response recorded from the real server, served as it is instead of
+     *             synthetic forecasts; null to go back to synthetic ones
+     */
+    public void setRecordedResponse(byte[] body) {
+        mRecordedBody = body;
+    }
+
+    /**
+     * @return How many connections clients opened, a client that reuses its connections opens
+     * fewer of them than it sends requests
+     */
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    public int getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    /**
+     * @return How many bytes of response bodies were sent, as they went over the wire
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * Stops listening and closes every open connection.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closeQuietly(mServerSocket);
+        }
+        synchronized (mConnections) {
+            for (Socket connection : mConnections) {
+                closeQuietly(connection);
+            }
+            mConnections.clear();
+        }
+    }
+
+    private void acceptConnections(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            final Socket connection;
+            try {
+                connection = serverSocket.accept();
+            } catch (IOException e) {
+                /* Closing the server socket ends up here as well */
+                break;
+            }
+
+            mConnectionCount.incrementAndGet();
+            mConnections.add(connection);
+            Thread connectionThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(connection);
+                }
+            }, "fake-weather-server-connection");
+            connectionThread.setDaemon(true);
+            connectionThread.start();
+        }
+    }
+
+    /**
+     * Answers the requests on a connection until the client closes it or asks to.
+     */
+    private void serve(Socket connection) {
+        try {
+            connection.setSoTimeout(KEEP_ALIVE_TIMEOUT_MILLIS);
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                if (requestLine.isEmpty()) continue;
+
+                Map<String, String> headers = new HashMap<>();
+                String headerLine;
+                while ((headerLine = readLine(in)) != null && !headerLine.isEmpty()) {
+                    int colon = headerLine.indexOf(':');
+                    if (colon <= 0) continue;
+                    headers.put(headerLine.substring(0, colon).trim().toLowerCase(Locale.US),
+                            headerLine.substring(colon + 1).trim());
+                }
+
+                boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+                respond(requestLine, headers, out, keepAlive);
+                out.flush();
+                if (!keepAlive) break;
+            }
+        } catch (SocketException e) {
+            /* The client or close() tore the connection down */
+        } catch (IOException e) {
+            /* The client went away or stayed idle for too long */
+        } finally {
+            mConnections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    private void respond(String requestLine, Map<String, String> headers, OutputStream out,
+                         boolean keepAlive) throws IOException {
+        mRequestCount.incrementAndGet();
+        sleepLatency();
+
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !"GET".equals(parts[0])) {
+            writeResponse(out, 405, null, null, false, keepAlive);
+            return;
+        }
+
+        String target = parts[1];
+        int queryStart = target.indexOf('?');
+        String path = queryStart < 0 ? target : target.substring(0, queryStart);
+        String query = queryStart < 0 ? "" : target.substring(queryStart + 1);
+        if (!FORECAST_PATH.equals(path)) {
+            writeResponse(out, 404, null, null, false, keepAlive);
+            return;
+        }
+
+        if (nextDouble() < mErrorRate) {
+            mErrorCount.incrementAndGet();
+            writeResponse(out, mErrorCode, null, null, false, keepAlive);
+            return;
+        }
+
+        byte[] body;
+        String eTag;
+        byte[] recordedBody = mRecordedBody;
+        if (recordedBody != null) {
+            body = recordedBody;
+            eTag = "\"recorded-" + Integer.toHexString(Arrays.hashCode(recordedBody)) + "\"";
+        } else {
+            int days = mDays > 0 ? mDays : parseDays(query);
+            long seed = nextForecastSeed();
+            body = SyntheticForecasts.forecastJson(days, seed).getBytes(SyntheticForecasts.UTF_8);
+            eTag = "\"" + days + "-" + seed + "\"";
+        }
+
+        if (mConditionalRequestsSupported && eTag.equals(headers.get("if-none-match"))) {
+            mNotModifiedCount.incrementAndGet();
+            writeResponse(out, 304, null, eTag, false, keepAlive);
+            return;
+        }
+
+        String acceptEncoding = headers.get("accept-encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        writeResponse(out, 200, gzip ? SyntheticForecasts.gzip(body) : body, eTag, gzip, keepAlive);
+    }
+
+    private void writeResponse(OutputStream out, int code, byte[] body, String eTag,
+                               boolean gzip, boolean keepAlive) throws IOException {
+        StringBuilder head = new StringBuilder(256)
+                .append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code))
+                .append("\r\n");
+        if (code != 304) {
+            head.append("Content-Type: application/json; charset=utf-8\r\n")
+                    .append("Content-Length: ").append(body != null ? body.length : 0)
+                    .append("\r\n");
+        }
+        if (eTag != null) head.append("ETag: ").append(eTag).append("\r\n");
+        if (gzip) head.append("Content-Encoding: gzip\r\n");
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n")
+                .append("\r\n");
+
+        out.write(head.toString().getBytes(CHARSET_NAME));
+        if (body != null) {
+            out.write(body);
+            mBytesSent.addAndGet(body.length);
+        }
+    }
+
+    private void sleepLatency() {
+        long latency = mMinLatencyMillis
+                + (long) (nextDouble() * (mMaxLatencyMillis - mMinLatencyMillis));
+        if (latency <= 0) return;
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The seed of the forecast the current request gets, after deciding whether the
+     * forecast changed since the previous request
+     */
+    private synchronized long nextForecastSeed() {
+        if (mRandom.nextDouble() < mChangeRate) mForecastSeed++;
+        return mForecastSeed;
+    }
+
+    private synchronized double nextDouble() {
+        return mRandom.nextDouble();
+    }
+
+    private static int parseDays(String query) {
+        for (String param : query.split("&")) {
+            if (param.startsWith("cnt=")) {
+                try {
+                    return Integer.parseInt(param.substring(4));
+                } catch (NumberFormatException e) {
+                    return DEFAULT_DAYS;
+                }
+            }
+        }
+        return DEFAULT_DAYS;
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 304:
+                return "Not Modified";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status " + code;
+        }
+    }
+
+    /**
+     * Reads a line of the request head, without its line break.
+     *
+     * @return The line, or null if the client closed the connection
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') break;
+            if (c != '\r') line.write(c);
+        }
+        if (c == -1 && line.size() == 0) return null;
+        return line.toString(CHARSET_NAME);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+            return contents.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            /* Nothing left to do with it */
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.choliy.igor.sunshine.fakeserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Synthetic forecast responses shaped like OpenWeatherMap's daily forecast, including the fields
+ * Sunshine doesn't read, so the parser has to skip them just like on a real response. The values
+ * come from a seed, so the same seed always gives the exact same bytes.
+ */
+public final class SyntheticForecasts {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* The seed of the forecast that doesn't change */
+    public static final long DEFAULT_SEED = 42;
+
+    /* A few real condition IDs, from clear sky to thunderstorm */
+    private static final int[] WEATHER_IDS = {800, 801, 802, 803, 804, 500, 501, 520, 600, 701, 211};
+
+    private SyntheticForecasts() {
+    }
+
+    /**
+     * @param days How many days the forecast has
+     * @return The JSON of a forecast response, always the same one for the same number of days
+     */
+    public static String forecastJson(int days) {
+        return forecastJson(days, DEFAULT_SEED);
+    }
+
+    /**
+     * @param days How many days the forecast has
+     * @param seed Decides the values of the forecast, a different seed gives a different one
+     * @return The JSON of a forecast response
+     */
+    public static String forecastJson(int days, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(512 + days * 420);
+
+        json.append("{\"city\":{\"id\":524901,\"name\":\"Moscow\",")
+                .append("\"coord\":{\"lon\":37.6156,\"lat\":55.7522},")
+                .append("\"country\":\"RU\",\"population\":0,\"timezone\":10800},")
+                .append("\"cod\":\"200\",\"message\":0.0592,\"cnt\":").append(days)
+                .append(",\"list\":[");
+
+        long dt = 1485766800L;
+        for (int day = 0; day < days; day++) {
+            if (day > 0) json.append(',');
+            double min = -20 + random.nextDouble() * 40;
+            double max = min + random.nextDouble() * 12;
+            int weatherId = WEATHER_IDS[random.nextInt(WEATHER_IDS.length)];
+
+            json.append("{\"dt\":").append(dt + day * 86400L)
+                    .append(",\"temp\":{")
+                    .append("\"day\":").append(format(min + 4))
+                    .append(",\"min\":").append(format(min))
+                    .append(",\"max\":").append(format(max))
+                    .append(",\"night\":").append(format(min + 1))
+                    .append(",\"eve\":").append(format(max - 2))
+                    .append(",\"morn\":").append(format(min + 2))
+                    .append("},\"pressure\":").append(format(980 + random.nextDouble() * 60))
+                    .append(",\"humidity\":").append(random.nextInt(101))
+                    .append(",\"weather\":[{\"id\":").append(weatherId)
+                    .append(",\"main\":\"Clouds\",\"description\":\"scattered clouds\"")
+                    .append(",\"icon\":\"03d\"}]")
+                    .append(",\"speed\":").append(format(random.nextDouble() * 15))
+                    .append(",\"deg\":").append(random.nextInt(360))
+                    .append(",\"clouds\":").append(random.nextInt(101))
+                    .append(",\"rain\":").append(format(random.nextDouble() * 3))
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * @param bytes What to compress
+     * @return The bytes gzipped, as a server using Content-Encoding: gzip would send them
+     */
+    public static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try {
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(bytes);
+            gzip.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+}